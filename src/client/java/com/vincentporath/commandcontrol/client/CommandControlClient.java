@@ -6,11 +6,11 @@ import net.fabricmc.api.EnvType;
 import net.fabricmc.api.Environment;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Client-side initialization for Command Control
@@ -21,11 +21,14 @@ public class CommandControlClient implements ClientModInitializer {
     
     private static final Logger LOGGER = LoggerFactory.getLogger("commandcontrol-client");
     
-    // Set of commands the player is allowed to use (synced from server)
-    private static Set<String> allowedCommands = new HashSet<>();
+    // Connection string table synced from server: id -> command name
+    private static final List<String> commandNames = new ArrayList<>();
     
-    // Set of commands that are hidden from tab-complete but still work
-    private static Set<String> hiddenCommands = new HashSet<>();
+    // Ids of the commands the player is allowed to use (synced from server)
+    private static BitSet allowedIds = new BitSet();
+    
+    // Ids of the commands that are hidden from tab-complete but still work
+    private static BitSet hiddenIds = new BitSet();
     
     // Whether we've received sync from a CommandControl-enabled server
     private static boolean syncReceived = false;
@@ -33,77 +36,127 @@ public class CommandControlClient implements ClientModInitializer {
     // Whether the player has full access (OP)
     private static boolean fullAccess = false;
     
+    // Version of the last applied sync - deltas only apply on top of this version
+    private static int syncVersion = 0;
+    
     @Override
     public void onInitializeClient() {
         LOGGER.info("[CommandControls] Client initializing...");
         
         // Register to receive command sync from server
-        ClientPlayNetworking.registerGlobalReceiver(CommandSyncHandler.SYNC_CHANNEL, (client, handler, buf, responseSender) -> {
-            // Read the sync data on network thread using new V2 format
-            CommandSyncHandler.SyncData syncData = CommandSyncHandler.readSyncPacketV2(buf);
+        ClientPlayNetworking.registerGlobalReceiver(CommandSyncHandler.SYNC_CHANNEL_V3, (client, handler, buf, responseSender) -> {
+            // Read the sync data on network thread
+            CommandSyncHandler.SyncData syncData = CommandSyncHandler.readSyncPacketV3(buf);
             
             // Update state on client thread
-            client.execute(() -> {
-                if (syncData.fullAccess) {
-                    // Full access packet (OP player)
-                    fullAccess = true;
-                    allowedCommands = new HashSet<>();
-                    hiddenCommands = new HashSet<>();
-                    syncReceived = true;
-                    LOGGER.info("[CommandControls] Received FULL ACCESS from server (OP mode)");
-                } else {
-                    // Normal allowed commands list
-                    fullAccess = false;
-                    allowedCommands = syncData.allowedCommands;
-                    hiddenCommands = syncData.hiddenCommands != null ? syncData.hiddenCommands : new HashSet<>();
-                    syncReceived = true;
-                    LOGGER.info("[CommandControls] Received {} allowed commands, {} hidden from server", 
-                            allowedCommands.size(), hiddenCommands.size());
-                }
-            });
+            client.execute(() -> applySync(syncData));
+        });
+        
+        // Older servers only send unversioned full lists
+        ClientPlayNetworking.registerGlobalReceiver(CommandSyncHandler.SYNC_CHANNEL, (client, handler, buf, responseSender) -> {
+            CommandSyncHandler.SyncData syncData = CommandSyncHandler.readLegacySyncPacket(buf);
+            client.execute(() -> applySync(syncData));
         });
         
         // Clear state when disconnecting
         ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> {
-            allowedCommands.clear();
-            hiddenCommands.clear();
-            syncReceived = false;
-            fullAccess = false;
+            clearState();
             LOGGER.debug("[CommandControls] Cleared command sync state");
         });
         
         LOGGER.info("[CommandControls] Client initialized!");
     }
     
+    private static void clearState() {
+        commandNames.clear();
+        allowedIds = new BitSet();
+        hiddenIds = new BitSet();
+        syncReceived = false;
+        fullAccess = false;
+        syncVersion = 0;
+        SuggestionFilter.update(null, null);
+    }
+    
     /**
-     * Check if a command should be shown in suggestions
-     * @param commandName The base command name (without /)
-     * @return true if the command should be shown in tab-complete
+     * Apply a sync packet to the local state
+     * Asks the server for a full snapshot if a delta does not fit the version we have
      */
-    public static boolean shouldShowCommand(String commandName) {
-        // If we haven't received sync from server, show all commands (vanilla behavior)
-        if (!syncReceived) {
-            return true;
+    private static void applySync(CommandSyncHandler.SyncData syncData) {
+        switch (syncData.kind) {
+            case FULL_ACCESS:
+                // Full access packet (OP player) - the next list starts a new string table
+                fullAccess = true;
+                commandNames.clear();
+                allowedIds = new BitSet();
+                hiddenIds = new BitSet();
+                LOGGER.debug("[CommandControls] Received FULL ACCESS from server (OP mode)");
+                break;
+            case SNAPSHOT:
+                fullAccess = false;
+                commandNames.clear();
+                commandNames.addAll(syncData.newNames);
+                allowedIds = syncData.allowedIds;
+                hiddenIds = syncData.hiddenIds;
+                LOGGER.debug("[CommandControls] Received {} allowed commands, {} hidden from server", 
+                        allowedIds.cardinality(), hiddenIds.cardinality());
+                break;
+            case DELTA:
+                if (!syncReceived || fullAccess || syncData.baseVersion != syncVersion
+                        || syncData.namesStart != commandNames.size()) {
+                    requestSnapshot(syncData.baseVersion);
+                    return;
+                }
+                commandNames.addAll(syncData.newNames);
+                allowedIds.andNot(syncData.removedAllowedIds);
+                allowedIds.or(syncData.allowedIds);
+                hiddenIds.andNot(syncData.removedHiddenIds);
+                hiddenIds.or(syncData.hiddenIds);
+                LOGGER.debug("[CommandControls] Applied command delta {} -> {}", syncData.baseVersion, syncData.version);
+                break;
+            case UNCHANGED:
+                if (!syncReceived || syncData.version != syncVersion) {
+                    requestSnapshot(syncData.version);
+                }
+                return;
         }
         
-        // Full access means show everything
+        syncVersion = syncData.version;
+        syncReceived = true;
         if (fullAccess) {
-            return true;
+            SuggestionFilter.update(null, null);
+        } else {
+            SuggestionFilter.update(getCommandNames(allowedIds), getCommandNames(hiddenIds));
         }
-        
-        String lowerCommand = commandName.toLowerCase();
-        
-        // Hidden commands are allowed but not shown in suggestions
-        if (hiddenCommands.contains(lowerCommand)) {
-            LOGGER.debug("[CommandControls] Hiding command from suggestions: {}", lowerCommand);
-            return false;
+    }
+    
+    /**
+     * Names (and patterns) of the commands in an id set
+     */
+    private static List<String> getCommandNames(BitSet ids) {
+        List<String> names = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            names.add(commandNames.get(id));
         }
-        
-        boolean allowed = allowedCommands.contains(lowerCommand);
-        if (!allowed) {
-            LOGGER.debug("[CommandControls] Blocking command: {} (not in {} allowed commands)", lowerCommand, allowedCommands.size());
+        return names;
+    }
+    
+    private static void requestSnapshot(int serverVersion) {
+        LOGGER.debug("[CommandControls] Command sync out of step (have {}, server at {}), requesting full list", 
+                syncVersion, serverVersion);
+        if (ClientPlayNetworking.canSend(CommandSyncHandler.REQUEST_CHANNEL)) {
+            ClientPlayNetworking.send(CommandSyncHandler.REQUEST_CHANNEL, PacketByteBufs.empty());
         }
-        return allowed;
+    }
+    
+    /**
+     * Check if a command should be shown in suggestions
+     * @param commandName The base command name (without /)
+     * @return true if the command should be shown in tab-complete
+     */
+    public static boolean shouldShowCommand(String commandName) {
+        // Without sync from the server, or with full access, everything is shown
+        // Hidden commands are allowed but not shown in suggestions
+        return SuggestionFilter.isVisible(commandName);
     }
     
     /**
@@ -124,6 +177,10 @@ public class CommandControlClient implements ClientModInitializer {
      * Get the set of allowed commands
      */
     public static Set<String> getAllowedCommands() {
-        return allowedCommands;
+        Set<String> result = new HashSet<>();
+        for (int id = allowedIds.nextSetBit(0); id >= 0; id = allowedIds.nextSetBit(id + 1)) {
+            result.add(commandNames.get(id));
+        }
+        return result;
     }
 }
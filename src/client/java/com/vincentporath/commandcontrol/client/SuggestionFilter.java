@@ -0,0 +1,275 @@
+package com.vincentporath.commandcontrol.client;
+
+import com.mojang.brigadier.context.StringRange;
+import com.mojang.brigadier.suggestion.Suggestion;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.vincentporath.commandcontrol.config.CommandPatternMatcher;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+
+import java.util.*;
+
+/**
+ * Filters root command suggestions against the commands synced from the server.
+ *
+ * Root names are matched straight against the suggestion text (skipping a leading "/",
+ * a namespace or anything after the first space) through a case-folded hash table, so no
+ * substrings or lower-cased copies are created per suggestion. If nothing has to be removed
+ * the original Suggestions object is returned, and filtered results are cached per chat input.
+ * Glob / regex entries synced by the server are matched on the same character range.
+ */
+@Environment(EnvType.CLIENT)
+public final class SuggestionFilter {
+    
+    private static final int CACHE_SIZE = 64;
+    
+    // Visible root commands (allowed and not hidden), or null to show everything
+    private static volatile VisibleRoots visibleRoots = null;
+    
+    // Filtered suggestions per chat input, valid for one sync state
+    private static final Map<String, CachedResult> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    
+    private SuggestionFilter() {
+    }
+    
+    /**
+     * Replace the visible root commands (called whenever the sync state changes)
+     * @param allowed lower-cased allowed root names and patterns, or null if every command is shown
+     * @param hidden lower-cased hidden root names and patterns
+     */
+    public static void update(Collection<String> allowed, Collection<String> hidden) {
+        visibleRoots = allowed != null ? new VisibleRoots(allowed, hidden) : null;
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+    
+    /**
+     * Whether suggestions are filtered at all (false without sync or with full access)
+     */
+    public static boolean isActive() {
+        return visibleRoots != null;
+    }
+    
+    /**
+     * Check if a root command name should be shown
+     */
+    public static boolean isVisible(String commandName) {
+        VisibleRoots table = visibleRoots;
+        return table == null || table.contains(commandName, 0, commandName.length());
+    }
+    
+    /**
+     * Filter root command suggestions typed into chat, reusing the result for the same input
+     * @param input current chat input, used as cache key
+     */
+    public static Suggestions filterChatInput(String input, Suggestions suggestions) {
+        VisibleRoots table = visibleRoots;
+        if (table == null || suggestions == null || suggestions.isEmpty()) {
+            return suggestions;
+        }
+        
+        CachedResult cached;
+        synchronized (cache) {
+            cached = cache.get(input);
+        }
+        if (cached != null && cached.table == table && cached.matches(suggestions)) {
+            return cached.result;
+        }
+        
+        // Namespaced suggestions like "minecraft:help" are checked by their plain name
+        Suggestions result = filter(table, suggestions, true, false);
+        synchronized (cache) {
+            cache.put(input, new CachedResult(table, suggestions, result));
+        }
+        return result;
+    }
+    
+    /**
+     * Filter suggestions whose root command is the text up to the first space
+     */
+    public static Suggestions filterCommandLines(Suggestions suggestions) {
+        VisibleRoots table = visibleRoots;
+        if (table == null || suggestions == null || suggestions.isEmpty()) {
+            return suggestions;
+        }
+        return filter(table, suggestions, false, true);
+    }
+    
+    private static Suggestions filter(VisibleRoots table, Suggestions suggestions, boolean stripNamespace, boolean cutAtSpace) {
+        List<Suggestion> list = suggestions.getList();
+        
+        // Find the first suggestion to drop - most of the time there is none
+        int firstHidden = -1;
+        for (int i = 0; i < list.size(); i++) {
+            if (!isVisible(table, list.get(i).getText(), stripNamespace, cutAtSpace)) {
+                firstHidden = i;
+                break;
+            }
+        }
+        if (firstHidden < 0) {
+            return suggestions;
+        }
+        
+        List<Suggestion> filtered = new ArrayList<>(list.size() - 1);
+        filtered.addAll(list.subList(0, firstHidden));
+        for (int i = firstHidden + 1; i < list.size(); i++) {
+            Suggestion suggestion = list.get(i);
+            if (isVisible(table, suggestion.getText(), stripNamespace, cutAtSpace)) {
+                filtered.add(suggestion);
+            }
+        }
+        return new Suggestions(suggestions.getRange(), filtered);
+    }
+    
+    private static boolean isVisible(VisibleRoots table, String text, boolean stripNamespace, boolean cutAtSpace) {
+        int start = text.startsWith("/") ? 1 : 0;
+        int end = text.length();
+        
+        if (cutAtSpace) {
+            int space = text.indexOf(' ', start);
+            if (space > start) {
+                end = space;
+            }
+        }
+        if (stripNamespace) {
+            int colon = text.indexOf(':', start);
+            if (colon > start && colon < end) {
+                start = colon + 1;
+            }
+        }
+        
+        return table.contains(text, start, end);
+    }
+    
+    /**
+     * Allowed and hidden root names plus the patterns among them
+     * A root is visible if it is allowed by name or pattern and hidden by neither
+     */
+    private static final class VisibleRoots {
+        private final NameTable names;
+        private final NameTable hiddenNames;
+        private final CommandPatternMatcher allowedPatterns;
+        private final CommandPatternMatcher hiddenPatterns;
+        
+        VisibleRoots(Collection<String> allowed, Collection<String> hidden) {
+            List<String> visible = new ArrayList<>();
+            List<String> patterns = new ArrayList<>();
+            Set<String> hiddenSet = new HashSet<>(hidden);
+            for (String name : allowed) {
+                if (CommandPatternMatcher.isPattern(name)) {
+                    patterns.add(name);
+                } else if (!hiddenSet.contains(name)) {
+                    visible.add(name);
+                }
+            }
+            
+            List<String> hiddenPatternList = new ArrayList<>();
+            for (String name : hidden) {
+                if (CommandPatternMatcher.isPattern(name)) {
+                    hiddenPatternList.add(name);
+                }
+            }
+            patterns.removeAll(hiddenPatternList);
+            
+            this.names = new NameTable(visible);
+            this.hiddenNames = new NameTable(hiddenSet);
+            this.allowedPatterns = patterns.isEmpty() ? null : CommandPatternMatcher.compile(patterns);
+            this.hiddenPatterns = hiddenPatternList.isEmpty() ? null : CommandPatternMatcher.compile(hiddenPatternList);
+        }
+        
+        boolean contains(CharSequence text, int start, int end) {
+            if (hiddenPatterns != null && hiddenPatterns.matches(text, start, end)) {
+                return false;
+            }
+            if (names.contains(text, start, end)) {
+                return true;
+            }
+            return allowedPatterns != null
+                    && allowedPatterns.matches(text, start, end)
+                    && !hiddenNames.contains(text, start, end);
+        }
+    }
+    
+    /**
+     * Open-addressing hash set of lower-case names that can be probed with any
+     * character range of a string, folding case while hashing and comparing
+     */
+    private static final class NameTable {
+        private final String[] slots;
+        private final int mask;
+        
+        NameTable(Collection<String> names) {
+            int capacity = Integer.highestOneBit(Math.max(4, names.size() * 2) - 1) << 1;
+            this.slots = new String[capacity];
+            this.mask = capacity - 1;
+            for (String name : names) {
+                int slot = hash(name, 0, name.length()) & mask;
+                while (slots[slot] != null && !slots[slot].equals(name)) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = name;
+            }
+        }
+        
+        boolean contains(CharSequence text, int start, int end) {
+            int slot = hash(text, start, end) & mask;
+            String candidate;
+            while ((candidate = slots[slot]) != null) {
+                if (matches(candidate, text, start, end)) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+        
+        private static int hash(CharSequence text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+            }
+            return hash ^ (hash >>> 16);
+        }
+        
+        private static boolean matches(String name, CharSequence text, int start, int end) {
+            if (name.length() != end - start) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (name.charAt(i - start) != Character.toLowerCase(text.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Filtered suggestions for one chat input
+     * Same input and same sync state give the same root suggestions, the size and
+     * range check only guards against a changed command tree
+     */
+    private static final class CachedResult {
+        final VisibleRoots table;
+        final StringRange range;
+        final int size;
+        final Suggestions result;
+        
+        CachedResult(VisibleRoots table, Suggestions original, Suggestions result) {
+            this.table = table;
+            this.range = original.getRange();
+            this.size = original.getList().size();
+            this.result = result;
+        }
+        
+        boolean matches(Suggestions suggestions) {
+            return suggestions.getList().size() == size && suggestions.getRange().equals(range);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.vincentporath.commandcontrol.benchmark;
+
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+import com.vincentporath.commandcontrol.config.PlayerRankCache;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Permission decisions as made on every command execution, suggestion and sync:
+ * cached rank lookup (the mod's PlayerRankCache over a stand-in permission provider)
+ * plus the policy check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermissionBenchmark {
+    
+    private static final int QUERY_COUNT = 1024;
+    private static final int PLAYER_COUNT = 200;
+    
+    @Param({"10", "1000", "10000"})
+    public int commands;
+    
+    @Param({"5", "50"})
+    public int ranks;
+    
+    @Param({"0", "5000"})
+    public int aliases;
+    
+    @Param({"0", "100"})
+    public int patterns;
+    
+    private CommandPolicy policy;
+    private PlayerRankCache<UUID> rankCache;
+    private UUID[] players;
+    private String[] queries;
+    private int[] queryIds;
+    private int cursor;
+    
+    @Setup
+    public void setup() {
+        policy = SyntheticConfigs.createPolicy(commands, ranks, aliases, patterns, commands / 20);
+        StandInRankProvider rankProvider = StandInRankProvider.withPlayers(policy.getRankHierarchy(), PLAYER_COUNT, 42);
+        rankCache = new PlayerRankCache<>(rankProvider);
+        players = rankProvider.getPlayers();
+        queries = SyntheticConfigs.createQueries(commands, aliases, QUERY_COUNT);
+        queryIds = new int[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queryIds[i] = policy.getCommandId(queries[i]);
+        }
+    }
+    
+    private int next() {
+        cursor = (cursor + 1) & (QUERY_COUNT - 1);
+        return cursor;
+    }
+    
+    private int rankIndex(int i) {
+        UUID player = players[i % PLAYER_COUNT];
+        return rankCache.getRankIndex(policy, player, player);
+    }
+    
+    @Benchmark
+    public boolean isCommandAllowed() {
+        int i = next();
+        return policy.isCommandAllowed(rankIndex(i), queries[i]);
+    }
+    
+    /**
+     * Check by interned command id, as done when a command is executed
+     */
+    @Benchmark
+    public boolean isCommandReachableById() {
+        int i = next();
+        return policy.isCommandReachable(rankIndex(i), queryIds[i], queries[i]);
+    }
+    
+    @Benchmark
+    public CommandPolicy.PathDecision checkPath() {
+        int i = next();
+        int rankIndex = rankIndex(i);
+        return policy.checkPath(rankIndex, new String[] {queries[i], "sub" + (i % SyntheticConfigs.SUBCOMMANDS_PER_ROOT)});
+    }
+    
+    @Benchmark
+    public Set<String> getAllowedCommandsForPlayer() {
+        int i = next();
+        return policy.getAllowedCommands(rankIndex(i));
+    }
+    
+    @Benchmark
+    public Set<String> getAliasesFor() {
+        return policy.getAliasesFor(queries[next()]);
+    }
+    
+    @Benchmark
+    public String resolveAlias() {
+        return policy.resolveAlias(queries[next()]);
+    }
+    
+    /**
+     * Rank resolution without the cache (join, LuckPerms recalculation)
+     */
+    @Benchmark
+    public int resolveRankUncached() {
+        return rankCache.resolveRankIndex(policy, players[next() % PLAYER_COUNT]);
+    }
+    
+    /**
+     * Compiling the policy, as done on every config (re)load
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void compilePolicy(Blackhole blackhole) {
+        blackhole.consume(SyntheticConfigs.createPolicy(commands, ranks, aliases, patterns, commands / 20));
+    }
+}
@@ -0,0 +1,50 @@
+package com.vincentporath.commandcontrol.benchmark;
+
+import com.vincentporath.commandcontrol.config.PlayerRankCache;
+
+import java.util.*;
+
+/**
+ * Stand-in for LuckPerms: players hold "group.<rank>" nodes and have no OP level.
+ * Plugged into the mod's own PlayerRankCache, so the benchmarks time the production
+ * rank resolution and caching without needing a server.
+ */
+public final class StandInRankProvider implements PlayerRankCache.RankSource<UUID> {
+    
+    private final Map<UUID, Set<String>> permissions = new HashMap<>();
+    
+    /**
+     * Create players with one random rank each (and the inherited group nodes below it)
+     */
+    public static StandInRankProvider withPlayers(List<String> rankHierarchy, int playerCount, long seed) {
+        StandInRankProvider provider = new StandInRankProvider();
+        Random random = new Random(seed);
+        for (int i = 0; i < playerCount; i++) {
+            Set<String> nodes = new HashSet<>();
+            int rank = random.nextInt(rankHierarchy.size() + 1) - 1;
+            for (int r = 0; r <= rank; r++) {
+                nodes.add("group." + rankHierarchy.get(r));
+            }
+            provider.permissions.put(new UUID(seed, i), nodes);
+        }
+        return provider;
+    }
+    
+    public UUID[] getPlayers() {
+        return permissions.keySet().toArray(new UUID[0]);
+    }
+    
+    /**
+     * Permission check as the fabric-permissions-api would answer it
+     */
+    @Override
+    public boolean hasGroup(UUID player, String rank) {
+        Set<String> nodes = permissions.get(player);
+        return nodes != null && nodes.contains("group." + rank);
+    }
+    
+    @Override
+    public boolean hasPermissionLevel(UUID player, int level) {
+        return false;
+    }
+}
@@ -0,0 +1,114 @@
+package com.vincentporath.commandcontrol.benchmark;
+
+import com.vincentporath.commandcontrol.config.CommandControlSettings;
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+
+import java.util.*;
+
+/**
+ * Deterministic synthetic configs for the benchmarks.
+ * Commands are named "cmd0".."cmdN", ranks "rank0".."rankN" and aliases "alias0".."aliasN".
+ */
+public final class SyntheticConfigs {
+    
+    // Sub-commands "sub0".."subN" per root in SyntheticDispatcher, targeted by path rules
+    public static final int SUBCOMMANDS_PER_ROOT = 6;
+    
+    private static final long SEED = 0x5EEDL;
+    
+    private SyntheticConfigs() {
+    }
+    
+    public static String commandName(int index) {
+        return "cmd" + index;
+    }
+    
+    public static String rankName(int index) {
+        return "rank" + index;
+    }
+    
+    public static String aliasName(int index) {
+        return "alias" + index;
+    }
+    
+    /**
+     * Build a policy shaped like a large server config
+     * @param commandCount commands spread over all_ranks and the ranks (bypass gets a few)
+     * @param rankCount length of the rank hierarchy
+     * @param aliasCount aliases; every fourth one points at another alias (chains)
+     * @param patternCount glob patterns like "cmd12*" spread over the ranks
+     * @param pathRuleCount sub-command rules like "cmd7.sub3" spread over the ranks
+     */
+    public static CommandPolicy createPolicy(int commandCount, int rankCount, int aliasCount, int patternCount, int pathRuleCount) {
+        Random random = new Random(SEED);
+        
+        List<String> hierarchy = new ArrayList<>(rankCount);
+        for (int i = 0; i < rankCount; i++) {
+            hierarchy.add(rankName(i));
+        }
+        
+        Set<String> bypass = new HashSet<>();
+        Set<String> allRanks = new HashSet<>();
+        Set<String> hidden = new HashSet<>();
+        Map<String, Set<String>> rankCommands = new HashMap<>();
+        for (String rank : hierarchy) {
+            rankCommands.put(rank, new HashSet<>());
+        }
+        
+        // Some commands end up only hidden or not listed at all, so checks also hit denied commands
+        for (int i = 0; i < commandCount; i++) {
+            String command = commandName(i);
+            int bucket = random.nextInt(rankCount + 3);
+            if (bucket == 0) {
+                allRanks.add(command);
+            } else if (bucket == 1 && bypass.size() < 16) {
+                bypass.add(command);
+            } else if (bucket == 2) {
+                if (random.nextBoolean()) {
+                    hidden.add(command);
+                }
+            } else if (bucket >= 3) {
+                rankCommands.get(hierarchy.get(bucket - 3)).add(command);
+            }
+        }
+        
+        Map<String, String> aliases = new HashMap<>();
+        for (int i = 0; i < aliasCount; i++) {
+            String target = i % 4 == 3 && i > 0
+                    ? aliasName(random.nextInt(i))
+                    : commandName(random.nextInt(Math.max(1, commandCount)));
+            aliases.put(aliasName(i), target);
+        }
+        
+        for (int i = 0; i < patternCount; i++) {
+            String rank = hierarchy.get(random.nextInt(rankCount));
+            rankCommands.get(rank).add("cmd" + random.nextInt(Math.max(1, commandCount)) + "*");
+        }
+        for (int i = 0; i < pathRuleCount; i++) {
+            String rank = hierarchy.get(random.nextInt(rankCount));
+            rankCommands.get(rank).add(commandName(random.nextInt(Math.max(1, commandCount)))
+                    + ".sub" + random.nextInt(SUBCOMMANDS_PER_ROOT));
+        }
+        
+        return new CommandPolicy(hierarchy, allRanks, bypass, hidden, aliases, rankCommands, CommandControlSettings.DEFAULT);
+    }
+    
+    /**
+     * A mix of names to check: listed commands, aliases and names no config mentions
+     */
+    public static String[] createQueries(int commandCount, int aliasCount, int size) {
+        Random random = new Random(SEED + 1);
+        String[] queries = new String[size];
+        for (int i = 0; i < size; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 6 || aliasCount == 0 && kind < 9) {
+                queries[i] = commandName(random.nextInt(Math.max(1, commandCount)));
+            } else if (kind < 9) {
+                queries[i] = aliasName(random.nextInt(aliasCount));
+            } else {
+                queries[i] = "unknown" + random.nextInt(1000);
+            }
+        }
+        return queries;
+    }
+}
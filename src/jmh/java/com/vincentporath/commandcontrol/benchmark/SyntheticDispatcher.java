@@ -0,0 +1,105 @@
+package com.vincentporath.commandcontrol.benchmark;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.BoolArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.tree.LiteralCommandNode;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.command.argument.EntityArgumentType;
+import net.minecraft.server.command.CommandOutput;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.Vec2f;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic Brigadier dispatchers shaped like a modpack's command tree.
+ * Root commands are named like the synthetic config's commands, so both line up.
+ */
+public final class SyntheticDispatcher {
+    
+    private static boolean bootstrapped = false;
+    
+    private SyntheticDispatcher() {
+    }
+    
+    /**
+     * Initialize the registries needed for argument types (once per JVM)
+     */
+    public static synchronized void bootstrap() {
+        if (!bootstrapped) {
+            SharedConstants.createGameVersion();
+            Bootstrap.initialize();
+            bootstrapped = true;
+        }
+    }
+    
+    /**
+     * Source with full permissions and no server, like the one used to build trees
+     */
+    public static ServerCommandSource createElevatedSource() {
+        return new ServerCommandSource(CommandOutput.DUMMY, Vec3d.ZERO, Vec2f.ZERO, null, 4,
+                "Benchmark", Text.literal("Benchmark"), null, null);
+    }
+    
+    /**
+     * Build a dispatcher with the given number of root commands
+     * Every root has a few sub-commands with argument chains; one "execute"-like root
+     * redirects back to the dispatcher root, like /execute run
+     */
+    public static CommandDispatcher<ServerCommandSource> create(int rootCount) {
+        bootstrap();
+        Random random = new Random(0xD15BL);
+        CommandDispatcher<ServerCommandSource> dispatcher = new CommandDispatcher<>();
+        
+        for (int i = 0; i < rootCount; i++) {
+            LiteralArgumentBuilder<ServerCommandSource> root = CommandManager.literal(SyntheticConfigs.commandName(i))
+                    .requires(source -> source.hasPermissionLevel(2))
+                    .executes(context -> 1);
+            int subcommands = 1 + random.nextInt(SyntheticConfigs.SUBCOMMANDS_PER_ROOT);
+            for (int s = 0; s < subcommands; s++) {
+                root.then(createSubcommand(random, s));
+            }
+            dispatcher.register(root);
+        }
+        
+        LiteralCommandNode<ServerCommandSource> execute = dispatcher.register(CommandManager.literal("execute"));
+        dispatcher.register(CommandManager.literal("execute")
+                .then(CommandManager.literal("run").redirect(dispatcher.getRoot()))
+                .then(CommandManager.literal("as")
+                        .then(CommandManager.argument("targets", EntityArgumentType.entities()).fork(execute, context -> List.of(context.getSource())))));
+        
+        return dispatcher;
+    }
+    
+    private static LiteralArgumentBuilder<ServerCommandSource> createSubcommand(Random random, int index) {
+        LiteralArgumentBuilder<ServerCommandSource> sub = CommandManager.literal("sub" + index);
+        switch (random.nextInt(4)) {
+            case 0:
+                sub.then(CommandManager.argument("player", EntityArgumentType.players())
+                        .executes(context -> 1)
+                        .then(CommandManager.argument("amount", IntegerArgumentType.integer(0, 64)).executes(context -> 1)));
+                break;
+            case 1:
+                sub.then(CommandManager.argument("name", StringArgumentType.word())
+                        .then(CommandManager.literal("set")
+                                .then(CommandManager.argument("value", StringArgumentType.greedyString()).executes(context -> 1)))
+                        .then(CommandManager.literal("clear").executes(context -> 1)));
+                break;
+            case 2:
+                sub.then(CommandManager.argument("enabled", BoolArgumentType.bool()).executes(context -> 1));
+                break;
+            default:
+                sub.executes(context -> 1);
+                break;
+        }
+        return sub;
+    }
+}
@@ -0,0 +1,85 @@
+package com.vincentporath.commandcontrol.benchmark;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.tree.RootCommandNode;
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+import com.vincentporath.commandcontrol.network.CommandTreeCompiler;
+import com.vincentporath.commandcontrol.network.DispatcherSnapshot;
+import io.netty.buffer.Unpooled;
+import net.minecraft.command.CommandSource;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.packet.s2c.play.CommandTreeS2CPacket;
+import net.minecraft.server.command.ServerCommandSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the filtered command tree a player receives, on a modpack-sized dispatcher
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TreeFilterBenchmark {
+    
+    @Param({"300", "1500"})
+    public int roots;
+    
+    @Param({"5", "50"})
+    public int ranks;
+    
+    private CommandDispatcher<ServerCommandSource> dispatcher;
+    private ServerCommandSource elevatedSource;
+    private CommandPolicy policy;
+    private int rankIndex;
+    
+    @Setup
+    public void setup() {
+        dispatcher = SyntheticDispatcher.create(roots);
+        elevatedSource = SyntheticDispatcher.createElevatedSource();
+        policy = SyntheticConfigs.createPolicy(roots, ranks, roots / 10, 0, roots / 20);
+        
+        // A rank in the middle of the hierarchy sees about half of the commands
+        rankIndex = ranks / 2;
+    }
+    
+    private RootCommandNode<CommandSource> assemble() {
+        // Done on the server thread per tree request
+        DispatcherSnapshot snapshot = DispatcherSnapshot.of(dispatcher.getRoot());
+        BitSet usableRedirects = snapshot.getUsableRedirects(elevatedSource);
+        return CommandTreeCompiler.forSnapshot(snapshot, usableRedirects).assemble(
+                commandName -> policy.isCommandAllowed(rankIndex, commandName),
+                commandName -> policy.getPathRules(rankIndex, commandName));
+    }
+    
+    /**
+     * First tree after a datapack reload: the dispatcher is snapshot and every allowed root subtree is copied
+     */
+    @Benchmark
+    public RootCommandNode<CommandSource> assembleCold() {
+        DispatcherSnapshot.invalidate();
+        CommandTreeCompiler.invalidate();
+        return assemble();
+    }
+    
+    /**
+     * Every further tree: compiled subtrees are linked, only root-dependent and pruned roots are copied
+     */
+    @Benchmark
+    public RootCommandNode<CommandSource> assembleWarm() {
+        return assemble();
+    }
+    
+    /**
+     * Tree plus packet encoding, as done once per rank by the tree cache
+     */
+    @Benchmark
+    public int assembleAndEncode() {
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        new CommandTreeS2CPacket(assemble()).write(buf);
+        int size = buf.readableBytes();
+        buf.release();
+        return size;
+    }
+}
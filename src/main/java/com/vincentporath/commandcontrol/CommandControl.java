@@ -2,23 +2,32 @@ package com.vincentporath.commandcontrol;
 
 import com.vincentporath.commandcontrol.command.CommandControlCommand;
 import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+import com.vincentporath.commandcontrol.config.ConfigWatcher;
 import com.vincentporath.commandcontrol.network.CommandSyncHandler;
+import com.vincentporath.commandcontrol.network.CommandSyncTracker;
+import com.vincentporath.commandcontrol.network.CommandTreeCache;
+import com.vincentporath.commandcontrol.network.ResyncScheduler;
+import com.vincentporath.commandcontrol.network.SuggestionPipeline;
 import com.vincentporath.commandcontrol.override.CommandRequirementOverride;
+import com.vincentporath.commandcontrol.util.AuditLog;
+import com.vincentporath.commandcontrol.util.CommandExecutionTracker;
+import com.vincentporath.commandcontrol.util.MetricsExporter;
+import com.vincentporath.commandcontrol.util.OpStatusTracker;
+import com.vincentporath.commandcontrol.util.PerfMetrics;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.network.PacketByteBuf;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.Identifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
-
 /**
  * Command Control - A Fabric mod for controlling command visibility and access
  * 
@@ -33,13 +42,7 @@ public class CommandControl implements ModInitializer {
     public static final String MOD_ID = "commandcontrols";
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
     
-    // Track OP status to detect changes (checked less frequently as backup)
-    private static final Map<UUID, Boolean> playerOpStatus = new HashMap<>();
-    private static int tickCounter = 0;
-    
-    // Track if we need to do a full resync (after /op or /deop command)
-    private static boolean pendingOpResync = false;
-    private static MinecraftServer serverInstance = null;
+    private static volatile MinecraftServer serverInstance = null;
     
     @Override
     public void onInitialize() {
@@ -64,68 +67,134 @@ public class CommandControl implements ModInitializer {
     }
     
     /**
-     * Called when /op or /deop is executed - triggers resync for all players
+     * Called after a new config policy was published (from any thread)
+     * Resyncs only the players whose effective commands changed
      */
-    public static void triggerOpResync() {
-        pendingOpResync = true;
+    public static void onPolicyReloaded(CommandPolicy previous, CommandPolicy current) {
+        MinecraftServer server = serverInstance;
+        if (server == null) {
+            return;
+        }
+        
+        // Move the metrics endpoint if its settings changed (off the server thread)
+        MetricsExporter.configure(current.getSettings());
+        AuditLog.configure(current.getSettings());
+        
+        server.execute(() -> {
+            boolean hierarchyChanged = !previous.getRankHierarchy().equals(current.getRankHierarchy());
+            int resynced = 0;
+            
+            for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+                // OP players see everything regardless of the config
+                if (OpStatusTracker.isOperator(player.getUuid())) {
+                    continue;
+                }
+                
+                int rankIndex = CommandControlConfig.getPlayerRankIndex(player);
+                if (hierarchyChanged || !current.hasSameCommands(rankIndex, previous, rankIndex)) {
+                    ResyncScheduler.schedule(player.getUuid());
+                    resynced++;
+                }
+            }
+            
+            LOGGER.info("[CommandControls] Config changed - resyncing {} player(s)", resynced);
+        });
+    }
+    
+    /**
+     * Get the running server, or null if no server is running
+     */
+    public static MinecraftServer getServer() {
+        return serverInstance;
     }
     
     /**
      * Send command sync to a specific player
+     * Only the first sync after joining is a full list - later syncs carry what changed
+     * (clients without the versioned channel get the full list every time)
      */
     public static void sendSyncToPlayer(ServerPlayerEntity player) {
         try {
-            // OP level 4 sees all commands - send empty sync to tell client to show everything
+            // Check which format the client can receive
+            boolean versioned = ServerPlayNetworking.canSend(player, CommandSyncHandler.SYNC_CHANNEL_V3);
+            if (!versioned && !ServerPlayNetworking.canSend(player, CommandSyncHandler.SYNC_CHANNEL)) {
+                LOGGER.warn("[CommandControls] Client cannot receive sync packets for {}", player.getName().getString());
+                return;
+            }
+            
+            long start = PerfMetrics.start();
+            
+            // OP level 4 sees all commands - tell client to show everything
             if (player.hasPermissionLevel(4)) {
-                // Send special "full access" packet - empty set means show all
-                if (ServerPlayNetworking.canSend(player, CommandSyncHandler.SYNC_CHANNEL)) {
-                    ServerPlayNetworking.send(player, CommandSyncHandler.SYNC_CHANNEL, 
-                            CommandSyncHandler.createFullAccessPacket());
-                    LOGGER.info("[CommandControls] Sent FULL ACCESS sync to {}", player.getName().getString());
+                if (versioned) {
+                    sendSyncPacket(player, CommandSyncHandler.SYNC_CHANNEL_V3,
+                            CommandSyncTracker.createFullAccessPacketFor(player.getUuid()), start);
+                } else {
+                    sendSyncPacket(player, CommandSyncHandler.SYNC_CHANNEL,
+                            CommandSyncHandler.createLegacyFullAccessPacket(), start);
                 }
+                LOGGER.debug("[CommandControls] Sent FULL ACCESS sync to {}", player.getName().getString());
                 return;
             }
             
             var allowedCommands = CommandControlConfig.getAllowedCommandsForPlayer(player);
             var hiddenCommands = CommandControlConfig.getHiddenCommands();
             
-            LOGGER.info("[CommandControls] Sending sync packet to {} with {} commands (hidden: {}): {}", 
-                    player.getName().getString(), allowedCommands.size(), hiddenCommands.size(), allowedCommands);
+            LOGGER.debug("[CommandControls] Syncing {} commands (hidden: {}) to {}", 
+                    allowedCommands.size(), hiddenCommands.size(), player.getName().getString());
             
-            // Check if client can receive our packets
-            if (ServerPlayNetworking.canSend(player, CommandSyncHandler.SYNC_CHANNEL)) {
-                // Send the allowed commands and hidden commands to the client
-                ServerPlayNetworking.send(player, CommandSyncHandler.SYNC_CHANNEL, 
-                        CommandSyncHandler.createSyncPacket(allowedCommands, hiddenCommands));
+            if (versioned) {
+                sendSyncPacket(player, CommandSyncHandler.SYNC_CHANNEL_V3,
+                        CommandSyncTracker.createPacketFor(player.getUuid(), allowedCommands, hiddenCommands), start);
             } else {
-                LOGGER.warn("[CommandControls] Client cannot receive sync packets for {}", player.getName().getString());
+                sendSyncPacket(player, CommandSyncHandler.SYNC_CHANNEL,
+                        CommandSyncHandler.createLegacySyncPacket(allowedCommands, hiddenCommands), start);
             }
         } catch (Exception e) {
             LOGGER.warn("[CommandControls] Failed to send command sync to player", e);
         }
     }
     
+    private static void sendSyncPacket(ServerPlayerEntity player, Identifier channel, PacketByteBuf packet, long start) {
+        PerfMetrics.SYNC_PACKET.recordSince(start);
+        PerfMetrics.SYNC_BYTES.add(packet.readableBytes());
+        ServerPlayNetworking.send(player, channel, packet);
+    }
+    
     private void registerEvents() {
         // Initialize LuckPerms integration when server starts
         ServerLifecycleEvents.SERVER_STARTED.register(server -> {
             serverInstance = server;
-            LuckPermsIntegration.initialize(server);
+            CommandExecutionTracker.bindServerThread(server.getThread());
+            LuckPermsIntegration.initialize();
+            
+            // Pick up config edits in the background instead of polling on the request path
+            ConfigWatcher.start();
+            MetricsExporter.configure(CommandControlConfig.getSettings());
+            AuditLog.configure(CommandControlConfig.getSettings());
             
             // Apply command permission overrides AFTER all commands are registered
             // This is the key - we override the requirement predicates using reflection
             CommandRequirementOverride.applyOverrides(server.getCommandManager().getDispatcher());
         });
         
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            ConfigWatcher.stop();
+            MetricsExporter.stop();
+            AuditLog.stop();
+            ResyncScheduler.clear();
+            SuggestionPipeline.clear();
+            serverInstance = null;
+        });
+        
         // Re-apply overrides after datapack reload (commands may be re-registered)
         ServerLifecycleEvents.END_DATA_PACK_RELOAD.register((server, resourceManager, success) -> {
             if (success) {
                 LOGGER.info("[CommandControls] Datapack reload detected, re-applying command overrides...");
                 CommandRequirementOverride.applyOverrides(server.getCommandManager().getDispatcher());
                 
-                // Resync all players' command trees
-                for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-                    server.getPlayerManager().sendCommandTree(player);
-                }
+                // Resync all players' command trees (spread over the next ticks)
+                ResyncScheduler.scheduleAll(server);
             }
         });
         
@@ -136,67 +205,47 @@ public class CommandControl implements ModInitializer {
             server.execute(() -> {
                 var player = handler.getPlayer();
                 // Track initial OP status
-                playerOpStatus.put(player.getUuid(), player.hasPermissionLevel(4));
+                OpStatusTracker.track(player);
+                CommandControlConfig.cachePlayerRank(player);
+                // A new connection always starts with a full snapshot
+                CommandSyncTracker.reset(player.getUuid());
                 sendSyncToPlayer(player);
             });
         });
         
         // Clean up when player disconnects
         ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
-            playerOpStatus.remove(handler.getPlayer().getUuid());
+            OpStatusTracker.forget(handler.getPlayer().getUuid());
+            CommandControlConfig.forgetPlayerRank(handler.getPlayer().getUuid());
+            CommandTreeCache.forget(handler.getPlayer().getUuid());
+            CommandSyncTracker.forget(handler.getPlayer().getUuid());
+            SuggestionPipeline.forget(handler.getPlayer().getUuid());
+        });
+        
+        // The client lost track of the sync version - start over with a full snapshot
+        ServerPlayNetworking.registerGlobalReceiver(CommandSyncHandler.REQUEST_CHANNEL, (server, player, handler, buf, responseSender) -> {
+            // Throttled per player, so a misbehaving client cannot force a snapshot on every packet
+            server.execute(() -> {
+                if (CommandSyncTracker.requestSnapshot(player.getUuid())) {
+                    sendSyncToPlayer(player);
+                }
+            });
         });
         
-        // Check for pending OP resync (triggered by mixin) and backup polling every 5 seconds
+        // Process queued resyncs (from /op, /deop, permission changes, reloads)
         ServerTickEvents.END_SERVER_TICK.register(server -> {
             serverInstance = server;
             
-            // Check for pending resync from /op or /deop command (immediate)
-            if (pendingOpResync) {
-                pendingOpResync = false;
-                resyncAllPlayers(server);
-            }
+            // Send the resyncs queued up during this tick
+            ResyncScheduler.tick(server);
             
-            // Backup: Check for OP status changes every 5 seconds (100 ticks)
-            // This catches edge cases like external tools modifying ops.json
-            tickCounter++;
-            if (tickCounter >= 100) {
-                tickCounter = 0;
-                checkOpStatusChanges(server);
-            }
+            // Answer suggestion requests that were over budget
+            SuggestionPipeline.tick(server);
+            
+            // Answer snapshot requests that were throttled
+            CommandSyncTracker.tick(server);
         });
         
         LOGGER.info("[CommandControls] Events registered");
     }
-    
-    private static void resyncAllPlayers(MinecraftServer server) {
-        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-            UUID uuid = player.getUuid();
-            boolean currentlyOp = player.hasPermissionLevel(4);
-            playerOpStatus.put(uuid, currentlyOp);
-            
-            // Resend sync
-            sendSyncToPlayer(player);
-            
-            // Also update the command tree
-            server.getPlayerManager().sendCommandTree(player);
-        }
-    }
-    
-    private void checkOpStatusChanges(MinecraftServer server) {
-        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-            UUID uuid = player.getUuid();
-            boolean currentlyOp = player.hasPermissionLevel(4);
-            Boolean previouslyOp = playerOpStatus.get(uuid);
-            
-            if (previouslyOp != null && previouslyOp != currentlyOp) {
-                playerOpStatus.put(uuid, currentlyOp);
-                
-                // Resend sync with updated permissions
-                sendSyncToPlayer(player);
-                
-                // Also update the command tree
-                server.getPlayerManager().sendCommandTree(player);
-            }
-        }
-    }
 }
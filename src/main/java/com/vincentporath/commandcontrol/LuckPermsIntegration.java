@@ -1,12 +1,12 @@
 package com.vincentporath.commandcontrol;
 
+import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.network.ResyncScheduler;
 import net.fabricmc.loader.api.FabricLoader;
 import net.luckperms.api.LuckPerms;
 import net.luckperms.api.LuckPermsProvider;
 import net.luckperms.api.event.EventBus;
 import net.luckperms.api.event.user.UserDataRecalculateEvent;
-import net.minecraft.server.MinecraftServer;
-import net.minecraft.server.network.ServerPlayerEntity;
 
 import java.util.UUID;
 
@@ -16,17 +16,14 @@ import java.util.UUID;
 public class LuckPermsIntegration {
     
     private static boolean initialized = false;
-    private static MinecraftServer server = null;
     
     /**
      * Try to hook into LuckPerms events
      * Called after server starts
      */
-    public static void initialize(MinecraftServer minecraftServer) {
+    public static void initialize() {
         if (initialized) return;
         
-        server = minecraftServer;
-        
         try {
             LuckPerms api = LuckPermsProvider.get();
             EventBus eventBus = api.getEventBus();
@@ -40,17 +37,12 @@ public class LuckPermsIntegration {
             eventBus.subscribe(plugin, UserDataRecalculateEvent.class, event -> {
                 UUID uuid = event.getUser().getUniqueId();
                 
-                // Run on main server thread
-                if (server != null) {
-                    server.execute(() -> {
-                        ServerPlayerEntity player = server.getPlayerManager().getPlayer(uuid);
-                        if (player != null) {
-                            // Resync this player's commands
-                            CommandControl.sendSyncToPlayer(player);
-                            server.getPlayerManager().sendCommandTree(player);
-                        }
-                    });
-                }
+                // Drop the cached rank right away so no check uses the old group
+                CommandControlConfig.invalidatePlayerRank(uuid);
+                
+                // Resync this player's commands - bulk edits fire many events for the same user,
+                // the scheduler coalesces them into one resync on the main thread
+                ResyncScheduler.schedule(uuid);
             });
             
             initialized = true;
@@ -63,11 +55,4 @@ public class LuckPermsIntegration {
             CommandControl.LOGGER.warn("[CommandControls] Failed to initialize LuckPerms integration", e);
         }
     }
-    
-    /**
-     * Update server reference (called on server start)
-     */
-    public static void setServer(MinecraftServer minecraftServer) {
-        server = minecraftServer;
-    }
 }
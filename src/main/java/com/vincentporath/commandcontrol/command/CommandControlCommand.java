@@ -4,6 +4,12 @@ import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.context.CommandContext;
 import com.vincentporath.commandcontrol.CommandControl;
 import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.network.CommandTreeCache;
+import com.vincentporath.commandcontrol.network.CommandTreeCompiler;
+import com.vincentporath.commandcontrol.network.DispatcherSnapshot;
+import com.vincentporath.commandcontrol.network.ResyncScheduler;
+import com.vincentporath.commandcontrol.network.SuggestionCache;
+import com.vincentporath.commandcontrol.util.PerfMetrics;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
@@ -28,6 +34,10 @@ public class CommandControlCommand {
                     .executes(CommandControlCommand::executeLuckPermsSetup))
                 .then(CommandManager.literal("status")
                     .executes(CommandControlCommand::executeStatus))
+                .then(CommandManager.literal("perf")
+                    .executes(CommandControlCommand::executePerf)
+                    .then(CommandManager.literal("reset")
+                        .executes(CommandControlCommand::executePerfReset)))
                 .executes(CommandControlCommand::executeHelp)
         );
     }
@@ -39,6 +49,7 @@ public class CommandControlCommand {
         source.sendMessage(Text.literal("§e/commandcontrols resync §7- Resync commands for all players"));
         source.sendMessage(Text.literal("§e/commandcontrols luckperms-setup §7- Setup LuckPerms permissions"));
         source.sendMessage(Text.literal("§e/commandcontrols status §7- Show current status"));
+        source.sendMessage(Text.literal("§e/commandcontrols perf [reset] §7- Show (or reset) timing metrics"));
         return 1;
     }
     
@@ -46,14 +57,15 @@ public class CommandControlCommand {
         var source = context.getSource();
         var server = source.getServer();
         
-        // Resync all players
-        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-            CommandControl.sendSyncToPlayer(player);
-            server.getPlayerManager().sendCommandTree(player);
-        }
+        // Rebuild trees from scratch in case commands changed at runtime
+        CommandTreeCache.invalidate();
+        CommandTreeCompiler.invalidate();
+        DispatcherSnapshot.invalidate();
+        SuggestionCache.invalidate();
         
-        int playerCount = server.getPlayerManager().getPlayerList().size();
-        source.sendMessage(Text.literal("§a[CommandControls] Resynced commands for " + playerCount + " player(s)"));
+        // Resync all players (spread over the next ticks)
+        int playerCount = ResyncScheduler.scheduleAll(server);
+        source.sendMessage(Text.literal("§a[CommandControls] Resyncing commands for " + playerCount + " player(s)"));
         return 1;
     }
     
@@ -91,6 +103,55 @@ public class CommandControlCommand {
         return 1;
     }
     
+    private static int executePerf(CommandContext<ServerCommandSource> context) {
+        var source = context.getSource();
+        double seconds = PerfMetrics.getElapsedSeconds();
+        
+        source.sendMessage(Text.literal(String.format("§6=== CommandControls Performance (last %.0fs) ===", seconds)));
+        for (PerfMetrics.Timer timer : PerfMetrics.TIMERS) {
+            long count = timer.getCount();
+            if (count == 0) {
+                source.sendMessage(Text.literal("§e" + timer.label + ": §7none"));
+                continue;
+            }
+            source.sendMessage(Text.literal(String.format("§e%s: §f%d §7(%.1f/s) §fp50 %s p99 %s max %s",
+                    timer.label, count, count / seconds,
+                    formatNanos(timer.getPercentileNanos(50)),
+                    formatNanos(timer.getPercentileNanos(99)),
+                    formatNanos(timer.getMaxNanos()))));
+        }
+        
+        for (PerfMetrics.Ratio ratio : PerfMetrics.RATIOS) {
+            double hitRatio = ratio.getHitRatio();
+            String value = Double.isNaN(hitRatio) ? "§7no lookups" : String.format("§f%.1f%% §7(%d hits, %d misses)",
+                    hitRatio * 100, ratio.getHits(), ratio.getMisses());
+            source.sendMessage(Text.literal("§e" + ratio.label + ": " + value));
+        }
+        
+        for (PerfMetrics.Counter counter : PerfMetrics.COUNTERS) {
+            long value = counter.get();
+            source.sendMessage(Text.literal(String.format("§e%s: §f%d §7(%.1f/s)", counter.label, value, value / seconds)));
+        }
+        
+        return 1;
+    }
+    
+    private static int executePerfReset(CommandContext<ServerCommandSource> context) {
+        PerfMetrics.reset();
+        context.getSource().sendMessage(Text.literal("§a[CommandControls] Performance metrics reset"));
+        return 1;
+    }
+    
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format("%.1fµs", nanos / 1e3);
+        }
+        return String.format("%.1fms", nanos / 1e6);
+    }
+    
     private static int executeLuckPermsSetup(CommandContext<ServerCommandSource> context) {
         var source = context.getSource();
         var server = source.getServer();
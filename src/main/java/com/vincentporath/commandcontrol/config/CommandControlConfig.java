@@ -6,11 +6,16 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.vincentporath.commandcontrol.CommandControl;
+import com.vincentporath.commandcontrol.util.PerfMetrics;
 import me.lucko.fabric.api.permissions.v0.Permissions;
+import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.server.network.ServerPlayerEntity;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
 import java.util.*;
 
 /**
@@ -22,29 +27,38 @@ public class CommandControlConfig {
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     private static final Path CONFIG_PATH = Paths.get("config", "commandcontrols", "commands.json");
     
-    // Commands allowed for all ranks
-    private static Set<String> allRanksCommands = new HashSet<>();
+    // Precompiled binary image of the policy in commands.json - see PolicyImage
+    private static final Path IMAGE_PATH = CONFIG_PATH.resolveSibling("commands.policy");
     
-    // Commands that bypass the filter entirely (always shown)
-    private static Set<String> bypassCommands = new HashSet<>();
-    
-    // Commands that are allowed but hidden from tab-complete (e.g., alias targets)
-    private static Set<String> hiddenCommands = new HashSet<>();
-    
-    // Command aliases (alias -> target command)
-    private static Map<String, String> commandAliases = new HashMap<>();
-    
-    // Commands per rank
-    private static Map<String, Set<String>> rankCommands = new HashMap<>();
-    
-    // Rank hierarchy (lowest to highest)
-    private static List<String> rankHierarchy = Arrays.asList(
+    // Default rank hierarchy (lowest to highest)
+    private static final List<String> DEFAULT_RANK_HIERARCHY = Arrays.asList(
             "default", "premium", "vip", "vip+", "moderator", "admin", "owner"
     );
     
+    // Currently published policy - replaced atomically on every (re)load
+    private static volatile CommandPolicy policy = new CommandPolicy(
+            DEFAULT_RANK_HIERARCHY, Set.of(), Set.of(), Set.of(), Map.of(), Map.of(), CommandControlSettings.DEFAULT);
+    
+    // Resolved rank per online player, only valid for the policy it was resolved against
+    // Ranks come from LuckPerms' "group.<rank>" nodes through the fabric-permissions-api
+    private static final PlayerRankCache<ServerPlayerEntity> rankCache = new PlayerRankCache<>(
+            new PlayerRankCache.RankSource<>() {
+                @Override
+                public boolean hasGroup(ServerPlayerEntity player, String rank) {
+                    return Permissions.check(player, "group." + rank, false);
+                }
+                
+                @Override
+                public boolean hasPermissionLevel(ServerPlayerEntity player, int level) {
+                    return player.hasPermissionLevel(level);
+                }
+            });
+    
     private static boolean initialized = false;
-    private static long lastLoadTime = 0;
-    private static final long RELOAD_INTERVAL = 30000; // 30 seconds
+    
+    // Identity of the last loaded file, to skip reloads when nothing changed
+    private static FileTime lastModified = null;
+    private static byte[] lastContentHash = null;
     
     /**
      * Initialize the configuration
@@ -59,95 +73,233 @@ public class CommandControlConfig {
     
     /**
      * Load configuration from file
+     * The new policy is compiled completely before it is published, so concurrent
+     * readers keep using the previous policy until the swap.
+     */
+    public static synchronized void loadConfig() {
+        load(true);
+    }
+    
+    /**
+     * Reload the configuration only if the file content changed since the last load
+     * Called from the config watcher thread
      */
-    public static void loadConfig() {
+    public static synchronized void reloadIfChanged() {
+        try {
+            if (Files.exists(CONFIG_PATH) && Files.getLastModifiedTime(CONFIG_PATH).equals(lastModified)) {
+                return;
+            }
+        } catch (IOException e) {
+            // Fall through and let the load report the problem
+        }
+        load(false);
+    }
+    
+    private static void load(boolean force) {
         try {
             if (!Files.exists(CONFIG_PATH)) {
                 createDefaultConfig();
             }
             
-            String content = Files.readString(CONFIG_PATH);
-            JsonObject root = GSON.fromJson(content, JsonObject.class);
-            
-            // Clear existing data
-            allRanksCommands.clear();
-            bypassCommands.clear();
-            hiddenCommands.clear();
-            commandAliases.clear();
-            rankCommands.clear();
+            FileTime modified = Files.getLastModifiedTime(CONFIG_PATH);
+            byte[] bytes = Files.readAllBytes(CONFIG_PATH);
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            lastModified = modified;
+            if (!force && Arrays.equals(hash, lastContentHash)) {
+                return;
+            }
             
-            // Load rank hierarchy
-            if (root.has("rank_hierarchy")) {
-                rankHierarchy = new ArrayList<>();
-                for (JsonElement element : root.getAsJsonArray("rank_hierarchy")) {
-                    rankHierarchy.add(element.getAsString().toLowerCase());
-                }
+            long start = PerfMetrics.start();
+            CommandPolicy compiled = readImage(hash);
+            boolean fromImage = compiled != null;
+            if (!fromImage) {
+                String content = new String(bytes, StandardCharsets.UTF_8);
+                compiled = parsePolicy(GSON.fromJson(content, JsonObject.class));
             }
+            CommandPolicy previous = policy;
+            policy = compiled;
+            lastContentHash = hash;
+            PerfMetrics.CONFIG_RELOAD.recordSince(start);
             
-            // Load bypass commands
-            if (root.has("bypass_commands")) {
-                for (JsonElement element : root.getAsJsonArray("bypass_commands")) {
-                    bypassCommands.add(element.getAsString().toLowerCase());
-                }
+            int totalCommands = compiled.getAllRanksCommands().size() + 
+                    compiled.getRankCommands().values().stream().mapToInt(Set::size).sum();
+            CommandControl.LOGGER.info("[CommandControls] Loaded config: {} base commands, {} ranks", 
+                    totalCommands, compiled.getRankHierarchy().size());
+            
+            // Resync players whose commands changed (no-op before the server is running)
+            CommandControl.onPolicyReloaded(previous, compiled);
+            
+            // Cache the compiled policy for the next start, after it is already in use
+            if (!fromImage) {
+                writeImage(compiled, hash);
             }
+        
+        } catch (Exception e) {
+            CommandControl.LOGGER.error("[CommandControls] Failed to load config", e);
             
-            // Load hidden commands (allowed but not shown in tab-complete)
-            if (root.has("hidden_commands")) {
-                for (JsonElement element : root.getAsJsonArray("hidden_commands")) {
-                    hiddenCommands.add(element.getAsString().toLowerCase());
-                }
-                CommandControl.LOGGER.info("[CommandControls] Loaded {} hidden commands", hiddenCommands.size());
+            // Keep the previously published policy; only fall back to defaults on first load
+            if (!initialized) {
+                policy = parsePolicy(createDefaultJson());
+            }
+        }
+    }
+    
+    /**
+     * Load the policy from the image if this mod version compiled it from the same config content
+     * Any problem with the image falls back to compiling the config
+     * @return the policy, or null if the config has to be compiled
+     */
+    private static CommandPolicy readImage(byte[] hash) {
+        try {
+            return PolicyImage.read(IMAGE_PATH, hash, getModVersion());
+        } catch (IOException | RuntimeException e) {
+            CommandControl.LOGGER.warn("[CommandControls] Failed to read policy image, compiling config", e);
+            return null;
+        }
+    }
+    
+    private static void writeImage(CommandPolicy compiled, byte[] hash) {
+        try {
+            PolicyImage.write(IMAGE_PATH, compiled, hash, getModVersion());
+        } catch (IOException | RuntimeException e) {
+            CommandControl.LOGGER.warn("[CommandControls] Failed to write policy image", e);
+        }
+    }
+    
+    /**
+     * Version of this mod - images compiled by another version are compiled again
+     */
+    private static String getModVersion() {
+        return FabricLoader.getInstance().getModContainer(CommandControl.MOD_ID)
+                .map(mod -> mod.getMetadata().getVersion().getFriendlyString())
+                .orElse("unknown");
+    }
+    
+    /**
+     * Compile a parsed config file into an immutable policy
+     */
+    private static CommandPolicy parsePolicy(JsonObject root) {
+        List<String> rankHierarchy = DEFAULT_RANK_HIERARCHY;
+        Set<String> allRanksCommands = new HashSet<>();
+        Set<String> bypassCommands = new HashSet<>();
+        Set<String> hiddenCommands = new HashSet<>();
+        Map<String, String> commandAliases = new HashMap<>();
+        Map<String, Set<String>> rankCommands = new HashMap<>();
+        
+        // Load rank hierarchy
+        if (root.has("rank_hierarchy")) {
+            rankHierarchy = new ArrayList<>();
+            for (JsonElement element : root.getAsJsonArray("rank_hierarchy")) {
+                rankHierarchy.add(element.getAsString().toLowerCase());
+            }
+        }
+        
+        // Load bypass commands
+        if (root.has("bypass_commands")) {
+            for (JsonElement element : root.getAsJsonArray("bypass_commands")) {
+                bypassCommands.add(element.getAsString().toLowerCase());
             }
+        }
+        
+        // Load hidden commands (allowed but not shown in tab-complete)
+        if (root.has("hidden_commands")) {
+            for (JsonElement element : root.getAsJsonArray("hidden_commands")) {
+                hiddenCommands.add(element.getAsString().toLowerCase());
+            }
+            CommandControl.LOGGER.info("[CommandControls] Loaded {} hidden commands", hiddenCommands.size());
+        }
+        
+        // Load command aliases
+        if (root.has("aliases")) {
+            JsonObject aliases = root.getAsJsonObject("aliases");
+            for (Map.Entry<String, JsonElement> entry : aliases.entrySet()) {
+                commandAliases.put(entry.getKey().toLowerCase(), entry.getValue().getAsString().toLowerCase());
+            }
+            CommandControl.LOGGER.info("[CommandControls] Loaded {} command aliases", commandAliases.size());
+        }
+        
+        // Load commands section
+        if (root.has("commands")) {
+            JsonObject commands = root.getAsJsonObject("commands");
             
-            // Load command aliases
-            if (root.has("aliases")) {
-                JsonObject aliases = root.getAsJsonObject("aliases");
-                for (Map.Entry<String, JsonElement> entry : aliases.entrySet()) {
-                    commandAliases.put(entry.getKey().toLowerCase(), entry.getValue().getAsString().toLowerCase());
+            // Load all_ranks commands
+            if (commands.has("all_ranks")) {
+                for (JsonElement element : commands.getAsJsonArray("all_ranks")) {
+                    allRanksCommands.add(element.getAsString().toLowerCase());
                 }
-                CommandControl.LOGGER.info("[CommandControls] Loaded {} command aliases", commandAliases.size());
             }
             
-            // Load commands section
-            if (root.has("commands")) {
-                JsonObject commands = root.getAsJsonObject("commands");
-                
-                // Load all_ranks commands
-                if (commands.has("all_ranks")) {
-                    for (JsonElement element : commands.getAsJsonArray("all_ranks")) {
-                        allRanksCommands.add(element.getAsString().toLowerCase());
-                    }
-                }
-                
-                // Load per-rank commands
-                for (String rank : rankHierarchy) {
-                    if (commands.has(rank)) {
-                        Set<String> cmds = new HashSet<>();
-                        for (JsonElement element : commands.getAsJsonArray(rank)) {
-                            cmds.add(element.getAsString().toLowerCase());
-                        }
-                        rankCommands.put(rank, cmds);
+            // Load per-rank commands
+            for (String rank : rankHierarchy) {
+                if (commands.has(rank)) {
+                    Set<String> cmds = new HashSet<>();
+                    for (JsonElement element : commands.getAsJsonArray(rank)) {
+                        cmds.add(element.getAsString().toLowerCase());
                     }
+                    rankCommands.put(rank, cmds);
                 }
             }
-            
-            lastLoadTime = System.currentTimeMillis();
-            
-            int totalCommands = allRanksCommands.size() + 
-                    rankCommands.values().stream().mapToInt(Set::size).sum();
-            CommandControl.LOGGER.info("[CommandControls] Loaded config: {} base commands, {} ranks", 
-                    totalCommands, rankHierarchy.size());
-            
-        } catch (Exception e) {
-            CommandControl.LOGGER.error("[CommandControls] Failed to load config", e);
-            createDefaultConfig();
         }
+        
+        return new CommandPolicy(rankHierarchy, allRanksCommands, bypassCommands, hiddenCommands,
+                commandAliases, rankCommands, parseSettings(root));
+    }
+    
+    /**
+     * Read the optional settings section, falling back to defaults for missing values
+     */
+    private static CommandControlSettings parseSettings(JsonObject root) {
+        CommandControlSettings defaults = CommandControlSettings.DEFAULT;
+        if (!root.has("settings")) {
+            return defaults;
+        }
+        
+        JsonObject settings = root.getAsJsonObject("settings");
+        int resyncPlayersPerTick = settings.has("resync_players_per_tick")
+                ? settings.get("resync_players_per_tick").getAsInt()
+                : defaults.resyncPlayersPerTick;
+        int suggestionRequestsPerSecond = settings.has("suggestion_requests_per_second")
+                ? settings.get("suggestion_requests_per_second").getAsInt()
+                : defaults.suggestionRequestsPerSecond;
+        int metricsPort = settings.has("metrics_port")
+                ? settings.get("metrics_port").getAsInt()
+                : defaults.metricsPort;
+        String metricsBindAddress = settings.has("metrics_bind_address")
+                ? settings.get("metrics_bind_address").getAsString()
+                : defaults.metricsBindAddress;
+        boolean auditLog = settings.has("audit_log")
+                ? settings.get("audit_log").getAsBoolean()
+                : defaults.auditLog;
+        int auditMaxFileSizeMb = settings.has("audit_max_file_size_mb")
+                ? settings.get("audit_max_file_size_mb").getAsInt()
+                : defaults.auditMaxFileSizeMb;
+        int auditMaxFiles = settings.has("audit_max_files")
+                ? settings.get("audit_max_files").getAsInt()
+                : defaults.auditMaxFiles;
+        
+        return new CommandControlSettings(resyncPlayersPerTick, suggestionRequestsPerSecond, metricsPort, metricsBindAddress,
+                auditLog, auditMaxFileSizeMb, auditMaxFiles);
     }
     
     /**
      * Create default configuration file
      */
     private static void createDefaultConfig() {
+        JsonObject root = createDefaultJson();
+        
+        try {
+            Files.createDirectories(CONFIG_PATH.getParent());
+            Files.writeString(CONFIG_PATH, GSON.toJson(root));
+            CommandControl.LOGGER.info("[CommandControls] Created default config at {}", CONFIG_PATH);
+        } catch (IOException e) {
+            CommandControl.LOGGER.error("[CommandControls] Failed to create default config", e);
+        }
+    }
+    
+    /**
+     * Build the default configuration
+     */
+    private static JsonObject createDefaultJson() {
         JsonObject root = new JsonObject();
         
         // Add description
@@ -157,7 +309,7 @@ public class CommandControlConfig {
         
         // Rank hierarchy
         JsonArray hierarchy = new JsonArray();
-        for (String rank : rankHierarchy) {
+        for (String rank : DEFAULT_RANK_HIERARCHY) {
             hierarchy.add(rank);
         }
         root.add("rank_hierarchy", hierarchy);
@@ -177,6 +329,14 @@ public class CommandControlConfig {
         // Example: aliases.addProperty("sb", "sidebar");
         root.add("aliases", aliases);
         
+        // General settings
+        JsonObject settings = new JsonObject();
+        settings.addProperty("resync_players_per_tick", CommandControlSettings.DEFAULT.resyncPlayersPerTick);
+        settings.addProperty("suggestion_requests_per_second", CommandControlSettings.DEFAULT.suggestionRequestsPerSecond);
+        settings.addProperty("metrics_port", CommandControlSettings.DEFAULT.metricsPort);
+        settings.addProperty("audit_log", CommandControlSettings.DEFAULT.auditLog);
+        root.add("settings", settings);
+        
         // Commands section
         JsonObject commands = new JsonObject();
         
@@ -249,76 +409,37 @@ public class CommandControlConfig {
         
         root.add("commands", commands);
         
-        try {
-            Files.createDirectories(CONFIG_PATH.getParent());
-            Files.writeString(CONFIG_PATH, GSON.toJson(root));
-            CommandControl.LOGGER.info("[CommandControls] Created default config at {}", CONFIG_PATH);
-        } catch (IOException e) {
-            CommandControl.LOGGER.error("[CommandControls] Failed to create default config", e);
-        }
-        
-        // Load the defaults into memory
-        allRanksCommands.addAll(Arrays.asList("help", "me", "msg", "list", "seed"));
-        bypassCommands.add("help");
+        return root;
     }
     
     /**
      * Check if a command is allowed for a player
      */
     public static boolean isCommandAllowed(ServerPlayerEntity player, String command) {
-        // Auto-reload config periodically
-        if (System.currentTimeMillis() - lastLoadTime > RELOAD_INTERVAL) {
-            loadConfig();
-        }
-        
         command = command.toLowerCase();
         
         // Debug log
-        CommandControl.LOGGER.debug("[CommandControls] isCommandAllowed check: command='{}', allRanksCommands={}", 
-            command, allRanksCommands);
-        
-        // Resolve alias to target command (if command is an alias)
-        String resolvedCommand = resolveAlias(command);
-        
-        // Also check if any alias points to this command (reverse lookup)
-        // This allows the target command if any of its aliases are in the allowed list
-        Set<String> aliasesForCommand = getAliasesFor(command);
-        
-        // Bypass commands are always allowed
-        if (bypassCommands.contains(command) || bypassCommands.contains(resolvedCommand)) {
-            return true;
-        }
-        for (String alias : aliasesForCommand) {
-            if (bypassCommands.contains(alias)) return true;
-        }
+        CommandControl.LOGGER.debug("[CommandControls] isCommandAllowed check: command='{}'", command);
         
-        // All ranks commands - check original, resolved, and any aliases pointing to this command
-        if (allRanksCommands.contains(command) || allRanksCommands.contains(resolvedCommand)) {
-            return true;
-        }
-        for (String alias : aliasesForCommand) {
-            if (allRanksCommands.contains(alias)) return true;
-        }
-        
-        // Get player's rank
-        String playerRank = getPlayerRank(player);
-        int playerRankIndex = rankHierarchy.indexOf(playerRank);
-        
-        // Check all ranks at or below player's rank
-        for (int i = 0; i <= playerRankIndex; i++) {
-            String rank = rankHierarchy.get(i);
-            Set<String> cmds = rankCommands.get(rank);
-            if (cmds != null) {
-                if (cmds.contains(command) || cmds.contains(resolvedCommand)) {
-                    return true;
-                }
-                for (String alias : aliasesForCommand) {
-                    if (cmds.contains(alias)) return true;
-                }
-            }
-        }
-        
-        return false;
+        // Read the policy once so the whole check runs against the same snapshot
+        long start = PerfMetrics.start();
+        CommandPolicy current = policy;
+        boolean allowed = current.isCommandAllowed(getPlayerRankIndex(current, player), command);
+        PerfMetrics.PERMISSION_CHECK.recordSince(start);
+        return allowed;
+    }
+    
+    /**
+     * Check if a player may use a command at all - completely, or only some of its
+     * sub-commands through path rules like "gamemode.survival"
+     */
+    public static boolean isCommandReachable(ServerPlayerEntity player, String command) {
+        long start = PerfMetrics.start();
+        command = command.toLowerCase();
+        CommandPolicy current = policy;
+        boolean reachable = current.isCommandReachable(getPlayerRankIndex(current, player), command);
+        PerfMetrics.PERMISSION_CHECK.recordSince(start);
+        return reachable;
     }
     
     /**
@@ -326,22 +447,14 @@ public class CommandControlConfig {
      * Returns the original command if no alias exists
      */
     public static String resolveAlias(String command) {
-        String resolved = commandAliases.get(command.toLowerCase());
-        return resolved != null ? resolved : command;
+        return policy.resolveAlias(command.toLowerCase());
     }
     
     /**
      * Get all aliases that map to a target command
      */
     public static Set<String> getAliasesFor(String targetCommand) {
-        Set<String> aliases = new HashSet<>();
-        targetCommand = targetCommand.toLowerCase();
-        for (Map.Entry<String, String> entry : commandAliases.entrySet()) {
-            if (entry.getValue().equals(targetCommand)) {
-                aliases.add(entry.getKey());
-            }
-        }
-        return aliases;
+        return policy.getAliasesFor(targetCommand.toLowerCase());
     }
     
     /**
@@ -349,77 +462,52 @@ public class CommandControlConfig {
      * This includes hidden commands so they work, but the client will filter them from suggestions
      */
     public static Set<String> getAllowedCommandsForPlayer(ServerPlayerEntity player) {
-        // Auto-reload config periodically
-        if (System.currentTimeMillis() - lastLoadTime > RELOAD_INTERVAL) {
-            loadConfig();
-        }
-        
-        Set<String> allowed = new HashSet<>();
-        
-        // Add bypass commands
-        allowed.addAll(bypassCommands);
-        
-        // Add all_ranks commands
-        allowed.addAll(allRanksCommands);
-        
-        // Add hidden commands (they need to be allowed for redirects to work)
-        allowed.addAll(hiddenCommands);
-        
-        // Get player's rank
-        String playerRank = getPlayerRank(player);
-        int playerRankIndex = rankHierarchy.indexOf(playerRank);
-        
-        // Add commands from all ranks at or below player's rank
-        for (int i = 0; i <= playerRankIndex; i++) {
-            String rank = rankHierarchy.get(i);
-            Set<String> cmds = rankCommands.get(rank);
-            if (cmds != null) {
-                allowed.addAll(cmds);
-            }
-        }
-        
-        // Add all aliases that point to allowed commands
-        Set<String> aliasesToAdd = new HashSet<>();
-        for (String cmd : allowed) {
-            aliasesToAdd.addAll(getAliasesFor(cmd));
-        }
-        allowed.addAll(aliasesToAdd);
-        
-        return allowed;
+        CommandPolicy current = policy;
+        return current.getAllowedCommands(getPlayerRankIndex(current, player));
     }
     
     /**
      * Get the set of hidden commands (allowed but not shown in tab-complete)
      */
     public static Set<String> getHiddenCommands() {
-        return new HashSet<>(hiddenCommands);
+        return policy.getHiddenCommands();
     }
     
     /**
-     * Get player's rank from LuckPerms using the simple permission check method
-     * As recommended by LuckPerms documentation: https://luckperms.net/wiki/Developer-API-Usage
+     * Get the player's rank index in the current policy
      */
-    private static String getPlayerRank(ServerPlayerEntity player) {
-        // LuckPerms recommended method: check group.X permissions
-        // This works because LuckPerms automatically grants "group.<groupname>" to players
-        // Check from highest to lowest rank to get the highest rank the player has
-        for (int i = rankHierarchy.size() - 1; i >= 0; i--) {
-            String rank = rankHierarchy.get(i);
-            try {
-                if (Permissions.check(player, "group." + rank, false)) {
-                    return rank;
-                }
-            } catch (Exception e) {
-                // Permission check failed, try next
-            }
-        }
-        
-        // Fallback based on OP level
-        if (player.hasPermissionLevel(4)) return "owner";
-        if (player.hasPermissionLevel(3)) return "admin";
-        if (player.hasPermissionLevel(2)) return "moderator";
-        
-        return "default";
+    public static int getPlayerRankIndex(ServerPlayerEntity player) {
+        return getPlayerRankIndex(policy, player);
+    }
+    
+    /**
+     * Get the player's rank index from the cache, resolving it through the permissions API on a miss
+     */
+    public static int getPlayerRankIndex(CommandPolicy current, ServerPlayerEntity player) {
+        return rankCache.getRankIndex(current, player.getUuid(), player);
+    }
+    
+    /**
+     * Resolve and cache a player's rank (called on join)
+     */
+    public static void cachePlayerRank(ServerPlayerEntity player) {
+        rankCache.invalidate(player.getUuid());
+        getPlayerRankIndex(policy, player);
+    }
+    
+    /**
+     * Drop a player's cached rank so it is resolved again on the next check
+     * Called when LuckPerms recalculates the user and on /op and /deop
+     */
+    public static void invalidatePlayerRank(UUID uuid) {
+        rankCache.invalidate(uuid);
+    }
+    
+    /**
+     * Forget a player's cached rank (called on disconnect)
+     */
+    public static void forgetPlayerRank(UUID uuid) {
+        rankCache.forget(uuid);
     }
     
     /**
@@ -429,10 +517,31 @@ public class CommandControlConfig {
         loadConfig();
     }
     
+    /**
+     * Get the path of the config file
+     */
+    public static Path getConfigPath() {
+        return CONFIG_PATH;
+    }
+    
+    /**
+     * Get the currently published policy
+     */
+    public static CommandPolicy getPolicy() {
+        return policy;
+    }
+    
+    /**
+     * Get the currently published settings
+     */
+    public static CommandControlSettings getSettings() {
+        return policy.getSettings();
+    }
+    
     /**
      * Get the rank hierarchy list
      */
     public static List<String> getRankHierarchy() {
-        return new ArrayList<>(rankHierarchy);
+        return policy.getRankHierarchy();
     }
 }
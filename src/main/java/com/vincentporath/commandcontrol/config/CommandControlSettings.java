@@ -0,0 +1,42 @@
+package com.vincentporath.commandcontrol.config;
+
+/**
+ * General (non-permission) settings from the "settings" section of the config
+ */
+public final class CommandControlSettings {
+    
+    public static final CommandControlSettings DEFAULT = new CommandControlSettings(20, 20, 0, "127.0.0.1", false, 10, 5);
+    
+    // Maximum number of players resynced per server tick (0 = no limit)
+    public final int resyncPlayersPerTick;
+    
+    // Maximum number of suggestion requests handled per player per second (0 = no limit)
+    public final int suggestionRequestsPerSecond;
+    
+    // Port of the Prometheus metrics endpoint (0 = disabled) and the address it binds to
+    public final int metricsPort;
+    public final String metricsBindAddress;
+    
+    // Audit log of denied and elevated commands, rotated at the given size and file count
+    public final boolean auditLog;
+    public final int auditMaxFileSizeMb;
+    public final int auditMaxFiles;
+    
+    public CommandControlSettings(
+            int resyncPlayersPerTick,
+            int suggestionRequestsPerSecond,
+            int metricsPort,
+            String metricsBindAddress,
+            boolean auditLog,
+            int auditMaxFileSizeMb,
+            int auditMaxFiles
+    ) {
+        this.resyncPlayersPerTick = resyncPlayersPerTick;
+        this.suggestionRequestsPerSecond = suggestionRequestsPerSecond;
+        this.metricsPort = metricsPort;
+        this.metricsBindAddress = metricsBindAddress;
+        this.auditLog = auditLog;
+        this.auditMaxFileSizeMb = auditMaxFileSizeMb;
+        this.auditMaxFiles = auditMaxFiles;
+    }
+}
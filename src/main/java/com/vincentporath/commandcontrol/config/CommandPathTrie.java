@@ -0,0 +1,125 @@
+package com.vincentporath.commandcontrol.config;
+
+import java.util.*;
+
+/**
+ * Compiled sub-command path rules of one rank, like "gamemode.survival" or "lp.user.*.info".
+ *
+ * Each rule is a dot-separated path of node names below a root command; "*" matches any
+ * single node (a literal or an argument). The trie is made deterministic when it is built:
+ * the rules under a "*" are merged into every sibling with an exact name, so a lookup takes
+ * one step per path segment no matter how many rules there are.
+ */
+public final class CommandPathTrie {
+    
+    public static final String WILDCARD = "*";
+    
+    private CommandPathTrie() {
+    }
+    
+    /**
+     * A node of the trie. A terminal node allows its whole subtree.
+     * Nodes are never modified after {@link #compile} returns.
+     */
+    public static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node wildcard = null;
+        private boolean terminal = false;
+        
+        /**
+         * Get the node for the next path segment, or null if no rule continues this way
+         */
+        public Node child(String segment) {
+            Node child = children.get(segment);
+            return child != null ? child : wildcard;
+        }
+        
+        /**
+         * Whether a rule ends here, allowing everything below this node
+         */
+        public boolean isTerminal() {
+            return terminal;
+        }
+        
+        private Node getOrCreate(String segment) {
+            if (WILDCARD.equals(segment)) {
+                if (wildcard == null) {
+                    wildcard = new Node();
+                }
+                return wildcard;
+            }
+            return children.computeIfAbsent(segment, k -> new Node());
+        }
+    }
+    
+    /**
+     * Check if a config entry is a path rule rather than a plain command name
+     */
+    public static boolean isPathRule(String entry) {
+        return entry.indexOf('.') > 0 && !entry.startsWith(CommandPatternMatcher.REGEX_PREFIX);
+    }
+    
+    /**
+     * Split a path rule into its segments
+     */
+    public static String[] split(String rule) {
+        return rule.split("\\.");
+    }
+    
+    /**
+     * Compile path rules into one trie per root command
+     * @param rules dot-separated path rules (root command first)
+     * @return root command -> trie node of that root command
+     */
+    public static Map<String, Node> compile(Collection<String> rules) {
+        Map<String, Node> roots = new HashMap<>();
+        for (String rule : rules) {
+            String[] segments = split(rule);
+            Node node = roots.computeIfAbsent(segments[0], k -> new Node());
+            for (int i = 1; i < segments.length && !node.terminal; i++) {
+                node = node.getOrCreate(segments[i]);
+            }
+            node.terminal = true;
+        }
+        
+        for (Node root : roots.values()) {
+            determinize(root);
+        }
+        return roots;
+    }
+    
+    /**
+     * Merge wildcard subtrees into their exact siblings, top-down
+     */
+    private static void determinize(Node node) {
+        if (node.terminal) {
+            // Everything below is allowed anyway
+            node.children.clear();
+            node.wildcard = null;
+            return;
+        }
+        
+        if (node.wildcard != null) {
+            for (Node child : node.children.values()) {
+                merge(child, node.wildcard);
+            }
+            determinize(node.wildcard);
+        }
+        for (Node child : node.children.values()) {
+            determinize(child);
+        }
+    }
+    
+    private static void merge(Node target, Node source) {
+        target.terminal |= source.terminal;
+        for (Map.Entry<String, Node> entry : source.children.entrySet()) {
+            merge(target.children.computeIfAbsent(entry.getKey(), k -> new Node()), entry.getValue());
+        }
+        if (source.wildcard != null) {
+            if (target.wildcard == null) {
+                target.wildcard = new Node();
+            }
+            merge(target.wildcard, source.wildcard);
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package com.vincentporath.commandcontrol.config;
+
+import java.util.*;
+
+/**
+ * Matches command names against many glob / regex patterns at once.
+ *
+ * All patterns are compiled into one NFA, which is turned into a DFA lazily while names are
+ * matched: every DFA state remembers its transitions, so after warm-up a match is one array
+ * read per character no matter how many patterns there are. Each state also knows which
+ * patterns accept there. The number of cached states is bounded; when the bound is hit the
+ * cache starts over.
+ *
+ * Pattern syntax:
+ * - glob: {@code *} matches any run of characters, {@code ?} any single character
+ * - {@code regex:} prefix: literals, {@code .}, {@code [a-z]} / {@code [^...]} classes,
+ *   {@code \d \w \s} and escaped characters, {@code ( | )} and the {@code * + ?} quantifiers.
+ *   Patterns always match the whole name.
+ * Names are matched case-insensitively (config entries are lower-cased).
+ */
+public final class CommandPatternMatcher {
+    
+    public static final String REGEX_PREFIX = "regex:";
+    
+    private static final int MAX_DFA_STATES = 4096;
+    private static final BitSet NO_MATCH = new BitSet();
+    
+    // NFA node kinds
+    private static final int EPSILON = 0;
+    private static final int CHAR = 1;
+    private static final int MATCH = 2;
+    
+    // NFA nodes as parallel arrays
+    private final int[] kinds;
+    private final CharClass[] classes;
+    private final int[] out1;
+    private final int[] out2;
+    private final int[] patternIds;
+    private final int[] startNodes;
+    private final int patternCount;
+    
+    // Lazily built DFA
+    private Map<BitSet, DfaState> dfaStates = new HashMap<>();
+    private volatile DfaState initialState;
+    
+    private CommandPatternMatcher(NfaBuilder nfa, int[] startNodes, int patternCount) {
+        int size = nfa.kinds.size();
+        this.kinds = new int[size];
+        this.classes = new CharClass[size];
+        this.out1 = new int[size];
+        this.out2 = new int[size];
+        this.patternIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            kinds[i] = nfa.kinds.get(i);
+            classes[i] = nfa.classes.get(i);
+            out1[i] = nfa.out1.get(i);
+            out2[i] = nfa.out2.get(i);
+            patternIds[i] = nfa.patternIds.get(i);
+        }
+        this.startNodes = startNodes;
+        this.patternCount = patternCount;
+        this.initialState = createInitialState();
+    }
+    
+    /**
+     * Check if a config entry is a pattern rather than a plain command name
+     */
+    public static boolean isPattern(String entry) {
+        if (entry.startsWith(REGEX_PREFIX)) {
+            return true;
+        }
+        return !CommandPathTrie.isPathRule(entry) && (entry.indexOf('*') >= 0 || entry.indexOf('?') >= 0);
+    }
+    
+    /**
+     * Compile patterns into one matcher
+     * @throws IllegalArgumentException if a regex pattern is malformed
+     */
+    public static CommandPatternMatcher compile(List<String> patterns) {
+        NfaBuilder nfa = new NfaBuilder();
+        int[] starts = new int[patterns.size()];
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            String regex = pattern.startsWith(REGEX_PREFIX)
+                    ? pattern.substring(REGEX_PREFIX.length())
+                    : globToRegex(pattern);
+            
+            int[] fragment;
+            try {
+                fragment = new RegexParser(regex, nfa).parse();
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid command pattern '" + pattern + "': " + e.getMessage(), e);
+            }
+            nfa.out1.set(fragment[1], nfa.add(MATCH, null, -1, -1, i));
+            starts[i] = fragment[0];
+        }
+        return new CommandPatternMatcher(nfa, starts, patterns.size());
+    }
+    
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                if ("\\.[]()|+^$".indexOf(c) >= 0) {
+                    regex.append('\\');
+                }
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+    
+    public int getPatternCount() {
+        return patternCount;
+    }
+    
+    /**
+     * Match a whole name
+     * @return ids (compile order) of the patterns matching the name; shared, must not be modified
+     */
+    public BitSet match(CharSequence text) {
+        return match(text, 0, text.length());
+    }
+    
+    /**
+     * Match a range of a string as a name, without copying it
+     * @return ids (compile order) of the patterns matching the range; shared, must not be modified
+     */
+    public BitSet match(CharSequence text, int start, int end) {
+        DfaState state = initialState;
+        for (int i = start; i < end && !state.dead; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            DfaState next = c < 128 ? state.ascii[c] : state.other.get(c);
+            if (next == null) {
+                next = step(state, c);
+            }
+            state = next;
+        }
+        return state.accepts;
+    }
+    
+    /**
+     * Check if any pattern matches a range of a string
+     */
+    public boolean matches(CharSequence text, int start, int end) {
+        return !match(text, start, end).isEmpty();
+    }
+    
+    private synchronized DfaState step(DfaState state, char c) {
+        DfaState next = c < 128 ? state.ascii[c] : state.other.get(c);
+        if (next != null) {
+            return next;
+        }
+        
+        BitSet targets = new BitSet(kinds.length);
+        for (int node = state.nodes.nextSetBit(0); node >= 0; node = state.nodes.nextSetBit(node + 1)) {
+            if (kinds[node] == CHAR && classes[node].matches(c)) {
+                closure(out1[node], targets);
+            }
+        }
+        
+        // Bound the memory used by the lazily built DFA
+        if (dfaStates.size() >= MAX_DFA_STATES) {
+            dfaStates = new HashMap<>();
+            initialState = createInitialState();
+        }
+        
+        next = dfaStates.computeIfAbsent(targets, this::createState);
+        if (c < 128) {
+            state.ascii[c] = next;
+        } else {
+            state.other.put(c, next);
+        }
+        return next;
+    }
+    
+    private DfaState createInitialState() {
+        BitSet nodes = new BitSet(kinds.length);
+        for (int start : startNodes) {
+            closure(start, nodes);
+        }
+        return dfaStates.computeIfAbsent(nodes, this::createState);
+    }
+    
+    private DfaState createState(BitSet nodes) {
+        BitSet accepts = new BitSet(patternCount);
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            if (kinds[node] == MATCH) {
+                accepts.set(patternIds[node]);
+            }
+        }
+        return new DfaState(nodes, accepts.isEmpty() ? NO_MATCH : accepts);
+    }
+    
+    /**
+     * Add a node and everything reachable from it through epsilon edges
+     */
+    private void closure(int start, BitSet result) {
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            int node = pending.pop();
+            if (node < 0 || result.get(node)) {
+                continue;
+            }
+            result.set(node);
+            if (kinds[node] == EPSILON) {
+                pending.push(out1[node]);
+                pending.push(out2[node]);
+            }
+        }
+    }
+    
+    private static final class DfaState {
+        final BitSet nodes;
+        final BitSet accepts;
+        final boolean dead;
+        final DfaState[] ascii = new DfaState[128];
+        final Map<Character, DfaState> other = new java.util.concurrent.ConcurrentHashMap<>();
+        
+        DfaState(BitSet nodes, BitSet accepts) {
+            this.nodes = nodes;
+            this.accepts = accepts;
+            this.dead = nodes.isEmpty();
+        }
+    }
+    
+    /**
+     * A set of characters: ranges, optionally negated
+     */
+    private static final class CharClass {
+        final char[] ranges;
+        final boolean negated;
+        
+        CharClass(char[] ranges, boolean negated) {
+            this.ranges = ranges;
+            this.negated = negated;
+        }
+        
+        boolean matches(char c) {
+            boolean inRange = false;
+            for (int i = 0; i < ranges.length && !inRange; i += 2) {
+                inRange = c >= ranges[i] && c <= ranges[i + 1];
+            }
+            return inRange != negated;
+        }
+        
+        static CharClass of(char c) {
+            return new CharClass(new char[] {c, c}, false);
+        }
+    }
+    
+    private static final class NfaBuilder {
+        final List<Integer> kinds = new ArrayList<>();
+        final List<CharClass> classes = new ArrayList<>();
+        final List<Integer> out1 = new ArrayList<>();
+        final List<Integer> out2 = new ArrayList<>();
+        final List<Integer> patternIds = new ArrayList<>();
+        
+        int add(int kind, CharClass charClass, int first, int second, int patternId) {
+            kinds.add(kind);
+            classes.add(charClass);
+            out1.add(first);
+            out2.add(second);
+            patternIds.add(patternId);
+            return kinds.size() - 1;
+        }
+        
+        int epsilon() {
+            return add(EPSILON, null, -1, -1, -1);
+        }
+    }
+    
+    /**
+     * Recursive descent parser building Thompson NFA fragments.
+     * A fragment is {start, end}, where end is an epsilon node whose first edge is still free.
+     */
+    private static final class RegexParser {
+        private final String regex;
+        private final NfaBuilder nfa;
+        private int pos = 0;
+        
+        RegexParser(String regex, NfaBuilder nfa) {
+            this.regex = regex;
+            this.nfa = nfa;
+        }
+        
+        int[] parse() {
+            int[] fragment = parseAlternation();
+            if (pos < regex.length()) {
+                throw new IllegalArgumentException("unexpected '" + regex.charAt(pos) + "' at " + pos);
+            }
+            return fragment;
+        }
+        
+        private int[] parseAlternation() {
+            int[] left = parseConcatenation();
+            while (pos < regex.length() && regex.charAt(pos) == '|') {
+                pos++;
+                int[] right = parseConcatenation();
+                int end = nfa.epsilon();
+                nfa.out1.set(left[1], end);
+                nfa.out1.set(right[1], end);
+                left = new int[] {nfa.add(EPSILON, null, left[0], right[0], -1), end};
+            }
+            return left;
+        }
+        
+        private int[] parseConcatenation() {
+            int start = nfa.epsilon();
+            int[] result = {start, start};
+            while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+                int[] next = parseRepetition();
+                nfa.out1.set(result[1], next[0]);
+                result[1] = next[1];
+            }
+            return result;
+        }
+        
+        private int[] parseRepetition() {
+            int[] fragment = parseAtom();
+            while (pos < regex.length()) {
+                char c = regex.charAt(pos);
+                int end;
+                if (c == '*') {
+                    end = nfa.epsilon();
+                    nfa.out1.set(fragment[1], fragment[0]);
+                    nfa.out2.set(fragment[1], end);
+                    fragment = new int[] {nfa.add(EPSILON, null, fragment[0], end, -1), end};
+                } else if (c == '+') {
+                    end = nfa.epsilon();
+                    nfa.out1.set(fragment[1], fragment[0]);
+                    nfa.out2.set(fragment[1], end);
+                    fragment = new int[] {fragment[0], end};
+                } else if (c == '?') {
+                    end = nfa.epsilon();
+                    nfa.out1.set(fragment[1], end);
+                    fragment = new int[] {nfa.add(EPSILON, null, fragment[0], end, -1), end};
+                } else {
+                    break;
+                }
+                pos++;
+            }
+            return fragment;
+        }
+        
+        private int[] parseAtom() {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case '(': {
+                    int[] inner = parseAlternation();
+                    if (pos >= regex.length() || regex.charAt(pos) != ')') {
+                        throw new IllegalArgumentException("missing ')'");
+                    }
+                    pos++;
+                    return inner;
+                }
+                case '[':
+                    return single(parseClass());
+                case '.':
+                    return single(new CharClass(new char[0], true));
+                case '\\':
+                    return single(parseEscape());
+                case '*':
+                case '+':
+                case '?':
+                case ')':
+                    throw new IllegalArgumentException("unexpected '" + c + "' at " + (pos - 1));
+                default:
+                    return single(CharClass.of(c));
+            }
+        }
+        
+        private int[] single(CharClass charClass) {
+            int end = nfa.epsilon();
+            return new int[] {nfa.add(CHAR, charClass, end, -1, -1), end};
+        }
+        
+        private CharClass parseEscape() {
+            if (pos >= regex.length()) {
+                throw new IllegalArgumentException("dangling '\\'");
+            }
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case 'd':
+                    return new CharClass(new char[] {'0', '9'}, false);
+                case 'w':
+                    return new CharClass(new char[] {'a', 'z', 'A', 'Z', '0', '9', '_', '_'}, false);
+                case 's':
+                    return new CharClass(new char[] {' ', ' ', '\t', '\t'}, false);
+                default:
+                    return CharClass.of(c);
+            }
+        }
+        
+        private CharClass parseClass() {
+            boolean negated = pos < regex.length() && regex.charAt(pos) == '^';
+            if (negated) {
+                pos++;
+            }
+            
+            StringBuilder ranges = new StringBuilder();
+            boolean first = true;
+            while (pos < regex.length() && (regex.charAt(pos) != ']' || first)) {
+                char low = regex.charAt(pos++);
+                if (low == '\\' && pos < regex.length()) {
+                    CharClass escaped = parseEscape();
+                    ranges.append(escaped.ranges);
+                    first = false;
+                    continue;
+                }
+                char high = low;
+                if (pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+                    high = regex.charAt(pos + 1);
+                    pos += 2;
+                }
+                ranges.append(low).append(high);
+                first = false;
+            }
+            if (pos >= regex.length()) {
+                throw new IllegalArgumentException("missing ']'");
+            }
+            pos++;
+            return new CharClass(ranges.toString().toCharArray(), negated);
+        }
+    }
+}
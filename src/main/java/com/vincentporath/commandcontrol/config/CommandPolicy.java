@@ -0,0 +1,643 @@
+package com.vincentporath.commandcontrol.config;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable, fully compiled view of the command configuration.
+ * A new policy is built off to the side on every (re)load and published in a single step,
+ * so permission checks never observe a half-loaded config and never need a lock.
+ */
+public final class CommandPolicy {
+    
+    // Rank hierarchy (lowest to highest) and rank -> index lookup
+    private final List<String> rankHierarchy;
+    private final Map<String, Integer> rankIndex;
+    
+    // Raw config sections
+    private final Set<String> allRanksCommands;
+    private final Set<String> bypassCommands;
+    private final Set<String> hiddenCommands;
+    private final Map<String, String> commandAliases;
+    private final Map<String, Set<String>> rankCommands;
+    
+    // Alias index: alias -> commands along its alias chain (direct target first, final target last)
+    private final Map<String, List<String>> aliasChains;
+    
+    // Alias -> final target, and target -> every alias that resolves through it
+    private final Map<String, String> resolvedAliases;
+    private final Map<String, Set<String>> aliasesByTarget;
+    
+    // General settings published together with the permissions
+    private final CommandControlSettings settings;
+    
+    // Every known command name interned to a dense integer id (and back)
+    private final Map<String, Integer> commandIds;
+    private final String[] commandNames;
+    
+    // Effective permissions per rank index as bitsets over command ids
+    // Inheritance, all_ranks, bypass commands and aliases are already folded in
+    // Index 0 holds the permissions of a player without a known rank
+    private final BitSet[] permissionsByRank;
+    
+    // Effective allowed commands per rank index (for syncing to client)
+    // Index 0 holds the commands of a player without a known rank
+    private final List<Set<String>> allowedCommandsByRank;
+    
+    // Effective sub-command path rules per rank index: the rules themselves, and the
+    // compiled trie per root command (including aliases of the root)
+    private final List<Set<String>> pathRulesByRank;
+    private final List<Map<String, CommandPathTrie.Node>> pathTriesByRank;
+    
+    // Glob / regex entries of bypass_commands, all_ranks and the ranks, compiled into one
+    // matcher, and the lowest rank slot each pattern is allowed from (null if there are none)
+    private final CommandPatternMatcher patternMatcher;
+    private final int[] patternSlots;
+    
+    // Lowest rank slot allowing a command that is not mentioned in the config, by its patterns
+    // Commands mentioned in the config have their pattern matches folded into permissionsByRank
+    private static final int MAX_PATTERN_MEMO = 4096;
+    private static final int NOT_ALLOWED = Integer.MAX_VALUE;
+    private final Map<String, Integer> patternMemo = new ConcurrentHashMap<>();
+    
+    /**
+     * Outcome of checking a sub-command path
+     */
+    public enum PathDecision {
+        // Allowed by the config
+        ALLOW,
+        // The root command is only partially allowed and this path is not part of it
+        DENY,
+        // The config says nothing about this command - use the command's own requirement
+        DEFAULT
+    }
+    
+    /**
+     * The expensive parts of a compiled policy, stored in the binary policy image
+     * so they don't have to be compiled again while the config is unchanged
+     */
+    static final class Compiled {
+        final String[] commandNames;
+        final Map<String, List<String>> aliasChains;
+        final BitSet[] permissionsByRank;
+        final List<Set<String>> allowedCommandsByRank;
+        
+        Compiled(
+                String[] commandNames,
+                Map<String, List<String>> aliasChains,
+                BitSet[] permissionsByRank,
+                List<Set<String>> allowedCommandsByRank
+        ) {
+            this.commandNames = commandNames;
+            this.aliasChains = aliasChains;
+            this.permissionsByRank = permissionsByRank;
+            this.allowedCommandsByRank = allowedCommandsByRank;
+        }
+    }
+    
+    public CommandPolicy(
+            List<String> rankHierarchy,
+            Set<String> allRanksCommands,
+            Set<String> bypassCommands,
+            Set<String> hiddenCommands,
+            Map<String, String> commandAliases,
+            Map<String, Set<String>> rankCommands,
+            CommandControlSettings settings
+    ) {
+        this(rankHierarchy, allRanksCommands, bypassCommands, hiddenCommands, commandAliases, rankCommands, settings, null);
+    }
+    
+    /**
+     * @param precompiled compiled tables from a policy image of the same config, or null to compile them
+     */
+    CommandPolicy(
+            List<String> rankHierarchy,
+            Set<String> allRanksCommands,
+            Set<String> bypassCommands,
+            Set<String> hiddenCommands,
+            Map<String, String> commandAliases,
+            Map<String, Set<String>> rankCommands,
+            CommandControlSettings settings,
+            Compiled precompiled
+    ) {
+        this.settings = settings;
+        this.rankHierarchy = List.copyOf(rankHierarchy);
+        this.allRanksCommands = freeze(allRanksCommands);
+        this.bypassCommands = freeze(bypassCommands);
+        this.hiddenCommands = freeze(hiddenCommands);
+        this.commandAliases = freeze(commandAliases);
+        
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < this.rankHierarchy.size(); i++) {
+            index.putIfAbsent(this.rankHierarchy.get(i), i);
+        }
+        this.rankIndex = freeze(index);
+        
+        Map<String, Set<String>> ranks = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : rankCommands.entrySet()) {
+            ranks.put(entry.getKey(), freeze(entry.getValue()));
+        }
+        this.rankCommands = freeze(ranks);
+        
+        this.aliasChains = precompiled != null ? precompiled.aliasChains : compileAliasChains();
+        
+        Map<String, String> resolved = new HashMap<>();
+        Map<String, Set<String>> byTarget = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : aliasChains.entrySet()) {
+            List<String> chain = entry.getValue();
+            resolved.put(entry.getKey(), chain.get(chain.size() - 1));
+            for (String target : chain) {
+                byTarget.computeIfAbsent(target, k -> new HashSet<>()).add(entry.getKey());
+            }
+        }
+        this.resolvedAliases = freeze(resolved);
+        Map<String, Set<String>> frozen = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : byTarget.entrySet()) {
+            frozen.put(entry.getKey(), freeze(entry.getValue()));
+        }
+        this.aliasesByTarget = freeze(frozen);
+        
+        if (precompiled != null) {
+            this.commandNames = precompiled.commandNames;
+            Map<String, Integer> ids = new HashMap<>();
+            for (int id = 0; id < commandNames.length; id++) {
+                ids.put(commandNames[id], id);
+            }
+            this.commandIds = Collections.unmodifiableMap(ids);
+        } else {
+            this.commandIds = internCommands();
+            this.commandNames = new String[commandIds.size()];
+            for (Map.Entry<String, Integer> entry : commandIds.entrySet()) {
+                commandNames[entry.getValue()] = entry.getKey();
+            }
+        }
+        
+        List<String> patterns = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        collectPatterns(bypassCommands, 0, patterns, slots);
+        collectPatterns(allRanksCommands, 0, patterns, slots);
+        for (int i = 0; i < this.rankHierarchy.size(); i++) {
+            Set<String> cmds = this.rankCommands.get(this.rankHierarchy.get(i));
+            if (cmds != null) {
+                collectPatterns(cmds, i + 1, patterns, slots);
+            }
+        }
+        this.patternMatcher = patterns.isEmpty() ? null : CommandPatternMatcher.compile(patterns);
+        this.patternSlots = slots.stream().mapToInt(Integer::intValue).toArray();
+        
+        this.permissionsByRank = precompiled != null ? precompiled.permissionsByRank : compilePermissions();
+        this.pathRulesByRank = compilePathRules();
+        this.pathTriesByRank = compilePathTries();
+        this.allowedCommandsByRank = precompiled != null ? precompiled.allowedCommandsByRank : compileAllowedCommands();
+    }
+    
+    /**
+     * Get the compiled tables for writing a policy image
+     */
+    Compiled getCompiled() {
+        return new Compiled(commandNames, aliasChains, permissionsByRank, allowedCommandsByRank);
+    }
+    
+    /**
+     * Unmodifiable hash-based copies of config collections.
+     * Set.copyOf / Map.copyOf probe linearly and slow down badly on runs of similar
+     * command names (warp1, warp2, ...), which large configs are full of.
+     */
+    static <T> Set<T> freeze(Collection<T> values) {
+        return Collections.unmodifiableSet(new HashSet<>(values));
+    }
+    
+    static <K, V> Map<K, V> freeze(Map<K, V> map) {
+        return Collections.unmodifiableMap(new HashMap<>(map));
+    }
+    
+    /**
+     * Follow every alias through chained aliases (a -> b -> c) until a non-alias command is reached.
+     * Cycles are cut at the first repeated command.
+     */
+    private Map<String, List<String>> compileAliasChains() {
+        Map<String, List<String>> chains = new HashMap<>();
+        for (String alias : commandAliases.keySet()) {
+            List<String> chain = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            seen.add(alias);
+            String target = commandAliases.get(alias);
+            while (target != null && seen.add(target)) {
+                chain.add(target);
+                target = commandAliases.get(target);
+            }
+            if (!chain.isEmpty()) {
+                chains.put(alias, List.copyOf(chain));
+            }
+        }
+        return freeze(chains);
+    }
+    
+    /**
+     * Assign a dense id to every command name mentioned anywhere in the config
+     */
+    private Map<String, Integer> internCommands() {
+        Map<String, Integer> ids = new HashMap<>();
+        List<Collection<String>> sources = new ArrayList<>();
+        sources.add(bypassCommands);
+        sources.add(allRanksCommands);
+        sources.add(hiddenCommands);
+        sources.add(commandAliases.keySet());
+        sources.add(commandAliases.values());
+        for (String rank : rankHierarchy) {
+            Set<String> cmds = rankCommands.get(rank);
+            if (cmds != null) {
+                sources.add(cmds);
+            }
+        }
+        for (Collection<String> source : sources) {
+            for (String command : source) {
+                if (!CommandPathTrie.isPathRule(command) && !CommandPatternMatcher.isPattern(command)) {
+                    ids.putIfAbsent(command, ids.size());
+                }
+            }
+        }
+        return Collections.unmodifiableMap(ids);
+    }
+    
+    /**
+     * Build the cumulative permission bitset for every rank.
+     * A command is allowed if it, the command it aliases, or any alias pointing to it
+     * is listed for the rank, so the alias closure is applied here once instead of per check.
+     */
+    private BitSet[] compilePermissions() {
+        BitSet[] result = new BitSet[rankHierarchy.size() + 1];
+        
+        // Bypass and all_ranks commands are allowed for everyone
+        BitSet cumulative = new BitSet(commandIds.size());
+        grant(cumulative, bypassCommands);
+        grant(cumulative, allRanksCommands);
+        result[0] = cumulative;
+        
+        // Each rank inherits the permissions of all ranks below it
+        for (int i = 0; i < rankHierarchy.size(); i++) {
+            cumulative = (BitSet) cumulative.clone();
+            Set<String> cmds = rankCommands.get(rankHierarchy.get(i));
+            if (cmds != null) {
+                grant(cumulative, cmds);
+            }
+            result[i + 1] = cumulative;
+        }
+        
+        // Fold in the patterns, so commands of the config never need the matcher at check time
+        if (patternMatcher != null) {
+            for (int id = 0; id < commandNames.length; id++) {
+                String command = commandNames[id];
+                for (int slot = matchPatterns(command); slot < result.length; slot++) {
+                    result[slot].set(id);
+                    for (String alias : getAliasesFor(command)) {
+                        result[slot].set(commandIds.get(alias));
+                    }
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    private static void collectPatterns(Set<String> commands, int slot, List<String> patterns, List<Integer> slots) {
+        for (String command : commands) {
+            if (CommandPatternMatcher.isPattern(command)) {
+                patterns.add(command);
+                slots.add(slot);
+            }
+        }
+    }
+    
+    /**
+     * Get the lowest rank slot whose patterns match a command, or NOT_ALLOWED
+     * Patterns of lower ranks are inherited, so the lowest matching slot is all that counts
+     */
+    private int matchPatterns(String command) {
+        BitSet matches = patternMatcher.match(command);
+        int lowest = NOT_ALLOWED;
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            lowest = Math.min(lowest, patternSlots[i]);
+        }
+        return lowest;
+    }
+    
+    private void grant(BitSet bits, Set<String> commands) {
+        for (String command : commands) {
+            // Path rules only allow part of a command - see compilePathTries
+            // Patterns are matched separately - see compilePermissions
+            if (CommandPathTrie.isPathRule(command) || CommandPatternMatcher.isPattern(command)) {
+                continue;
+            }
+            bits.set(commandIds.get(command));
+            
+            // Aliases resolving through this command are allowed with it
+            for (String alias : getAliasesFor(command)) {
+                bits.set(commandIds.get(alias));
+            }
+            
+            // The targets of an allowed alias are allowed through the reverse lookup
+            List<String> chain = aliasChains.get(command);
+            if (chain != null) {
+                for (String target : chain) {
+                    bits.set(commandIds.get(target));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Collect the cumulative path rules for every rank
+     */
+    private List<Set<String>> compilePathRules() {
+        List<Set<String>> result = new ArrayList<>(rankHierarchy.size() + 1);
+        
+        Set<String> cumulative = new HashSet<>();
+        addPathRules(cumulative, bypassCommands);
+        addPathRules(cumulative, allRanksCommands);
+        result.add(freeze(cumulative));
+        
+        for (String rank : rankHierarchy) {
+            Set<String> cmds = rankCommands.get(rank);
+            if (cmds != null) {
+                addPathRules(cumulative, cmds);
+            }
+            result.add(freeze(cumulative));
+        }
+        
+        return List.copyOf(result);
+    }
+    
+    private static void addPathRules(Set<String> target, Set<String> commands) {
+        for (String command : commands) {
+            if (CommandPathTrie.isPathRule(command)) {
+                target.add(command);
+            }
+        }
+    }
+    
+    /**
+     * Compile the path rules of every rank into tries, reachable from the root
+     * command as well as from every alias of it
+     */
+    private List<Map<String, CommandPathTrie.Node>> compilePathTries() {
+        List<Map<String, CommandPathTrie.Node>> result = new ArrayList<>(pathRulesByRank.size());
+        for (Set<String> rules : pathRulesByRank) {
+            Map<String, CommandPathTrie.Node> tries = new HashMap<>();
+            for (Map.Entry<String, CommandPathTrie.Node> entry : CommandPathTrie.compile(rules).entrySet()) {
+                String root = entry.getKey();
+                tries.put(root, entry.getValue());
+                for (String alias : getAliasesFor(root)) {
+                    tries.putIfAbsent(alias, entry.getValue());
+                }
+                List<String> chain = aliasChains.get(root);
+                if (chain != null) {
+                    for (String target : chain) {
+                        tries.putIfAbsent(target, entry.getValue());
+                    }
+                }
+            }
+            result.add(freeze(tries));
+        }
+        return List.copyOf(result);
+    }
+    
+    /**
+     * Build the cumulative allowed command set for every rank
+     * Root commands that are only partially allowed through path rules are included
+     */
+    private List<Set<String>> compileAllowedCommands() {
+        List<Set<String>> result = new ArrayList<>(rankHierarchy.size() + 1);
+        
+        // Bypass, all_ranks and hidden commands are allowed for everyone
+        Set<String> cumulative = new HashSet<>();
+        cumulative.addAll(bypassCommands);
+        cumulative.addAll(allRanksCommands);
+        cumulative.addAll(hiddenCommands);
+        result.add(withAliases(cumulative));
+        
+        // Each rank inherits the commands of all ranks below it
+        for (String rank : rankHierarchy) {
+            Set<String> cmds = rankCommands.get(rank);
+            if (cmds != null) {
+                cumulative.addAll(cmds);
+            }
+            result.add(withAliases(cumulative));
+        }
+        
+        // Replace path rules by their root commands
+        for (int i = 0; i < result.size(); i++) {
+            Set<String> commands = new HashSet<>(result.get(i));
+            commands.removeIf(CommandPathTrie::isPathRule);
+            commands.addAll(pathTriesByRank.get(i).keySet());
+            result.set(i, freeze(commands));
+        }
+        
+        return List.copyOf(result);
+    }
+    
+    /**
+     * Return an immutable copy of the given commands plus all aliases pointing to them
+     */
+    private Set<String> withAliases(Set<String> commands) {
+        Set<String> result = new HashSet<>(commands);
+        for (String cmd : commands) {
+            result.addAll(getAliasesFor(cmd));
+        }
+        return freeze(result);
+    }
+    
+    /**
+     * Check if a command is allowed for a rank
+     * @param rankIndex index in the rank hierarchy, or -1 if the player has no known rank
+     */
+    public boolean isCommandAllowed(int rankIndex, String command) {
+        Integer id = commandIds.get(command);
+        if (id != null) {
+            return getPermissions(rankIndex).get(id);
+        }
+        if (patternMatcher == null) {
+            return false;
+        }
+        
+        Integer slot = patternMemo.get(command);
+        if (slot == null) {
+            // Players can type any root command, so the memo is bounded
+            if (patternMemo.size() >= MAX_PATTERN_MEMO) {
+                patternMemo.clear();
+            }
+            slot = matchPatterns(command);
+            patternMemo.put(command, slot);
+        }
+        return slot <= toRankSlot(rankIndex);
+    }
+    
+    /**
+     * Check if a command is allowed for a rank by its interned id
+     * @param commandId id from {@link #getCommandId(String)}
+     */
+    public boolean isCommandAllowed(int rankIndex, int commandId) {
+        return commandId >= 0 && getPermissions(rankIndex).get(commandId);
+    }
+    
+    /**
+     * Get the effective permission bitset for a rank
+     * @param rankIndex index in the rank hierarchy, or -1 if the player has no known rank
+     */
+    private BitSet getPermissions(int rankIndex) {
+        return permissionsByRank[toRankSlot(rankIndex)];
+    }
+    
+    private int toRankSlot(int rankIndex) {
+        return Math.max(Math.min(rankIndex, rankHierarchy.size() - 1) + 1, 0);
+    }
+    
+    /**
+     * Check if a root command can be used at all by a rank - either completely,
+     * or partially through sub-command path rules
+     */
+    public boolean isCommandReachable(int rankIndex, String command) {
+        return isCommandAllowed(rankIndex, command) || getPathRules(rankIndex, command) != null;
+    }
+    
+    /**
+     * Same as {@link #isCommandReachable(int, String)}, using the interned id when the command has one
+     * @param commandId id from {@link #getCommandId(String)}, or -1 for commands only matched by patterns
+     */
+    public boolean isCommandReachable(int rankIndex, int commandId, String command) {
+        boolean allowed = commandId >= 0 ? getPermissions(rankIndex).get(commandId) : isCommandAllowed(rankIndex, command);
+        return allowed || getPathRules(rankIndex, command) != null;
+    }
+    
+    /**
+     * Get the compiled path rules below a root command for a rank, or null if there are none
+     */
+    public CommandPathTrie.Node getPathRules(int rankIndex, String command) {
+        return pathTriesByRank.get(toRankSlot(rankIndex)).get(command);
+    }
+    
+    /**
+     * Check a path of node names (root command first) for a rank
+     * Takes one trie step per path segment
+     */
+    public PathDecision checkPath(int rankIndex, String[] path) {
+        if (isCommandAllowed(rankIndex, path[0])) {
+            return PathDecision.ALLOW;
+        }
+        
+        CommandPathTrie.Node node = getPathRules(rankIndex, path[0]);
+        if (node == null) {
+            return PathDecision.DEFAULT;
+        }
+        
+        // Nodes on the way to an allowed path stay usable so the path can be reached
+        for (int i = 1; i < path.length && !node.isTerminal(); i++) {
+            node = node.child(path[i]);
+            if (node == null) {
+                return PathDecision.DENY;
+            }
+        }
+        return PathDecision.ALLOW;
+    }
+    
+    /**
+     * Check if a rank has exactly the same effective commands as a rank of another policy
+     * Used after a reload to resync only the players whose commands actually changed
+     */
+    public boolean hasSameCommands(int rankIndex, CommandPolicy other, int otherRankIndex) {
+        if (!getAllowedCommands(rankIndex).equals(other.getAllowedCommands(otherRankIndex))
+                || !hiddenCommands.equals(other.hiddenCommands)
+                || !pathRulesByRank.get(toRankSlot(rankIndex)).equals(other.pathRulesByRank.get(other.toRankSlot(otherRankIndex)))) {
+            return false;
+        }
+        
+        BitSet permissions = getPermissions(rankIndex);
+        BitSet otherPermissions = other.getPermissions(otherRankIndex);
+        if (permissions.cardinality() != otherPermissions.cardinality()) {
+            return false;
+        }
+        for (int id = permissions.nextSetBit(0); id >= 0; id = permissions.nextSetBit(id + 1)) {
+            if (!other.isCommandAllowed(otherRankIndex, commandNames[id])) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Get the interned id of a command, or -1 if the command is not mentioned in the config
+     */
+    public int getCommandId(String command) {
+        Integer id = commandIds.get(command);
+        return id != null ? id : -1;
+    }
+    
+    /**
+     * Resolve a command alias to its final target command, following chained aliases
+     * Returns the original command if no alias exists
+     */
+    public String resolveAlias(String command) {
+        String resolved = resolvedAliases.get(command);
+        return resolved != null ? resolved : command;
+    }
+    
+    /**
+     * Get all aliases that resolve to a target command, directly or through other aliases
+     * The returned set is immutable and shared
+     */
+    public Set<String> getAliasesFor(String targetCommand) {
+        Set<String> aliases = aliasesByTarget.get(targetCommand);
+        return aliases != null ? aliases : Set.of();
+    }
+    
+    /**
+     * Get the effective allowed commands for a rank (including hidden commands and aliases)
+     * @param rankIndex index in the rank hierarchy, or -1 if the player has no known rank
+     */
+    public Set<String> getAllowedCommands(int rankIndex) {
+        return allowedCommandsByRank.get(toRankSlot(rankIndex));
+    }
+    
+    /**
+     * Get the index of a rank in the hierarchy, or -1 if the rank is unknown
+     */
+    public int getRankIndex(String rank) {
+        Integer index = rankIndex.get(rank);
+        return index != null ? index : -1;
+    }
+    
+    /**
+     * Get the name of a rank by its index, or null if the index is not a known rank
+     */
+    public String getRankName(int rankIndex) {
+        return rankIndex >= 0 && rankIndex < rankHierarchy.size() ? rankHierarchy.get(rankIndex) : null;
+    }
+    
+    public CommandControlSettings getSettings() {
+        return settings;
+    }
+    
+    public List<String> getRankHierarchy() {
+        return rankHierarchy;
+    }
+    
+    public Set<String> getAllRanksCommands() {
+        return allRanksCommands;
+    }
+    
+    public Set<String> getBypassCommands() {
+        return bypassCommands;
+    }
+    
+    public Set<String> getHiddenCommands() {
+        return hiddenCommands;
+    }
+    
+    public Map<String, String> getCommandAliases() {
+        return commandAliases;
+    }
+    
+    public Map<String, Set<String>> getRankCommands() {
+        return rankCommands;
+    }
+}
@@ -0,0 +1,90 @@
+package com.vincentporath.commandcontrol.config;
+
+import com.vincentporath.commandcontrol.CommandControl;
+
+import java.io.IOException;
+import java.nio.file.*;
+
+/**
+ * Background watcher that reloads the config when commands.json changes on disk.
+ * All file I/O and parsing happens on the watcher thread, never on a player-facing path.
+ */
+public class ConfigWatcher {
+    
+    // Editors often write a file in several steps - wait for them to finish
+    private static final long SETTLE_DELAY_MS = 250;
+    
+    private static Thread watcherThread = null;
+    private static WatchService watchService = null;
+    
+    /**
+     * Start watching the config directory (called on server start)
+     */
+    public static synchronized void start() {
+        if (watcherThread != null) return;
+        
+        Path configDir = CommandControlConfig.getConfigPath().getParent();
+        try {
+            Files.createDirectories(configDir);
+            watchService = FileSystems.getDefault().newWatchService();
+            configDir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            CommandControl.LOGGER.warn("[CommandControls] Failed to watch config directory - use /commandcontrols reload after changes", e);
+            return;
+        }
+        
+        WatchService service = watchService;
+        watcherThread = new Thread(() -> run(service), "CommandControls Config Watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        CommandControl.LOGGER.info("[CommandControls] Watching {} for changes", configDir);
+    }
+    
+    /**
+     * Stop watching (called on server stop)
+     */
+    public static synchronized void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+        watchService = null;
+        watcherThread = null;
+    }
+    
+    private static void run(WatchService service) {
+        Path fileName = CommandControlConfig.getConfigPath().getFileName();
+        
+        while (true) {
+            try {
+                WatchKey key = service.take();
+                Thread.sleep(SETTLE_DELAY_MS);
+                
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                        relevant = true;
+                    }
+                }
+                
+                if (relevant) {
+                    CommandControlConfig.reloadIfChanged();
+                }
+                
+                if (!key.reset()) {
+                    CommandControl.LOGGER.warn("[CommandControls] Config directory is no longer accessible - stopped watching");
+                    return;
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                CommandControl.LOGGER.warn("[CommandControls] Error while watching config", e);
+            }
+        }
+    }
+}
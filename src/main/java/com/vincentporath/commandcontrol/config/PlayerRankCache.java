@@ -0,0 +1,127 @@
+package com.vincentporath.commandcontrol.config;
+
+import com.vincentporath.commandcontrol.util.PerfMetrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of each player's resolved rank index.
+ * A rank is resolved through the permission API once per player and policy; the cached
+ * index is only valid for the policy it was resolved against.
+ * Ranks may be invalidated from other threads (LuckPerms events) while a resolve is running.
+ * Every invalidation replaces the player's entry, and a resolve only stores its result if the
+ * entry it started from is still in place, so a rank resolved before an invalidation never survives it.
+ *
+ * @param <P> the player type the {@link RankSource} checks permissions of
+ */
+public final class PlayerRankCache<P> {
+    
+    private final RankSource<P> source;
+    private final Map<UUID, CachedRank> ranks = new ConcurrentHashMap<>();
+    
+    /**
+     * Answers permission checks for a player (LuckPerms / fabric-permissions-api in game)
+     */
+    public interface RankSource<P> {
+        /**
+         * Whether the player holds the "group.<rank>" permission
+         */
+        boolean hasGroup(P player, String rank);
+        
+        /**
+         * Whether the player has at least the given OP level
+         */
+        boolean hasPermissionLevel(P player, int level);
+    }
+    
+    public PlayerRankCache(RankSource<P> source) {
+        this.source = source;
+    }
+    
+    /**
+     * Get the player's rank index from the cache, resolving it through the rank source on a miss
+     */
+    public int getRankIndex(CommandPolicy policy, UUID uuid, P player) {
+        // A resolve always starts from an entry, so an invalidation while it runs can replace it
+        CachedRank cached = ranks.computeIfAbsent(uuid, key -> new CachedRank(null, 0));
+        if (cached.policy == policy) {
+            PerfMetrics.RANK_CACHE.record(true);
+            return cached.rankIndex;
+        }
+        
+        PerfMetrics.RANK_CACHE.record(false);
+        long start = PerfMetrics.start();
+        int rankIndex = resolveRankIndex(policy, player);
+        PerfMetrics.RANK_RESOLVE.recordSince(start);
+        
+        // Entries are compared by identity - an invalidation in the meantime replaced it
+        ranks.replace(uuid, cached, new CachedRank(policy, rankIndex));
+        return rankIndex;
+    }
+    
+    /**
+     * Drop a player's cached rank so it is resolved again on the next check
+     * Resolves that are already running will not store their result
+     * Players without an entry (e.g. offline users edited in LuckPerms) are left alone
+     */
+    public void invalidate(UUID uuid) {
+        ranks.computeIfPresent(uuid, (key, old) -> new CachedRank(null, 0));
+    }
+    
+    /**
+     * Forget a player entirely (called on disconnect)
+     */
+    public void forget(UUID uuid) {
+        ranks.remove(uuid);
+    }
+    
+    /**
+     * Resolve the player's rank index without the cache
+     */
+    public int resolveRankIndex(CommandPolicy policy, P player) {
+        return policy.getRankIndex(resolveRank(policy, player));
+    }
+    
+    /**
+     * Get the player's highest rank of the hierarchy
+     * LuckPerms grants "group.<groupname>" to every member, so the hierarchy is checked
+     * from the highest rank down (https://luckperms.net/wiki/Developer-API-Usage)
+     */
+    private String resolveRank(CommandPolicy policy, P player) {
+        List<String> rankHierarchy = policy.getRankHierarchy();
+        for (int i = rankHierarchy.size() - 1; i >= 0; i--) {
+            String rank = rankHierarchy.get(i);
+            try {
+                if (source.hasGroup(player, rank)) {
+                    return rank;
+                }
+            } catch (Exception e) {
+                // Permission check failed, try next
+            }
+        }
+        
+        // Fallback based on OP level
+        if (source.hasPermissionLevel(player, 4)) return "owner";
+        if (source.hasPermissionLevel(player, 3)) return "admin";
+        if (source.hasPermissionLevel(player, 2)) return "moderator";
+        
+        return "default";
+    }
+    
+    /**
+     * A rank index resolved against a specific policy
+     * Invalidated entries have no policy, so they never match
+     */
+    private static final class CachedRank {
+        final CommandPolicy policy;
+        final int rankIndex;
+        
+        CachedRank(CommandPolicy policy, int rankIndex) {
+            this.policy = policy;
+            this.rankIndex = rankIndex;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.vincentporath.commandcontrol.config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Binary image of a compiled policy, cached next to commands.json.
+ *
+ * The image holds an interned string table, the config sections as string ids and the
+ * expensive compiled tables (command ids, alias chains, permission bitsets per rank and
+ * the allowed command sets), tagged with the version of the mod that compiled it and the
+ * SHA-256 of the JSON it was compiled from. While both are unchanged, a (re)load reads the
+ * image instead of parsing the JSON and compiling the policy again. Patterns and path rules
+ * are recompiled from their entries, which is cheap. Any mismatch or damage makes the image
+ * be ignored and rewritten.
+ *
+ * The file is read into a heap buffer rather than mapped: nearly all of it is copied into
+ * the policy anyway, and a mapping would keep the file locked on Windows until it is
+ * garbage collected, so it could not be replaced.
+ *
+ * Bump {@link #FORMAT_VERSION} whenever the layout changes.
+ */
+public final class PolicyImage {
+    
+    private static final int MAGIC = 0x43435049; // "CCPI"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HASH_LENGTH = 32;
+    
+    // Images are only read up to this size; anything larger is damaged
+    private static final long MAX_IMAGE_SIZE = Integer.MAX_VALUE - 8;
+    
+    private PolicyImage() {
+    }
+    
+    /**
+     * Load the policy from an image if it was compiled by this mod version from a config with the given hash
+     * @return the policy, or null if there is no usable image
+     */
+    public static CommandPolicy read(Path path, byte[] sourceHash, String modVersion) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_IMAGE_SIZE) {
+                return null;
+            }
+            buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                // Read until full or end of file
+            }
+            buf.flip();
+        }
+        
+        try {
+            if (buf.remaining() < 8 || buf.getInt() != MAGIC || buf.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (!modVersion.equals(readString(buf)) || buf.remaining() < HASH_LENGTH) {
+                return null;
+            }
+            byte[] hash = new byte[HASH_LENGTH];
+            buf.get(hash);
+            if (!Arrays.equals(hash, sourceHash)) {
+                return null;
+            }
+            return readPolicy(buf);
+        } catch (RuntimeException e) {
+            // Truncated or damaged image
+            return null;
+        }
+    }
+    
+    private static CommandPolicy readPolicy(ByteBuffer buf) {
+        String[] strings = new String[readCount(buf, Integer.BYTES)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buf);
+        }
+        
+        List<String> rankHierarchy = readList(buf, strings);
+        Set<String> allRanksCommands = new HashSet<>(readList(buf, strings));
+        Set<String> bypassCommands = new HashSet<>(readList(buf, strings));
+        Set<String> hiddenCommands = new HashSet<>(readList(buf, strings));
+        
+        Map<String, String> commandAliases = new HashMap<>();
+        int aliasCount = readCount(buf, 2 * Integer.BYTES);
+        for (int i = 0; i < aliasCount; i++) {
+            commandAliases.put(strings[buf.getInt()], strings[buf.getInt()]);
+        }
+        
+        Map<String, Set<String>> rankCommands = new HashMap<>();
+        int rankCount = readCount(buf, 2 * Integer.BYTES);
+        for (int i = 0; i < rankCount; i++) {
+            rankCommands.put(strings[buf.getInt()], new HashSet<>(readList(buf, strings)));
+        }
+        
+        CommandControlSettings settings = new CommandControlSettings(
+                buf.getInt(),
+                buf.getInt(),
+                buf.getInt(),
+                strings[buf.getInt()],
+                buf.get() != 0,
+                buf.getInt(),
+                buf.getInt());
+        
+        String[] commandNames = readList(buf, strings).toArray(new String[0]);
+        
+        Map<String, List<String>> aliasChains = new HashMap<>();
+        int chainCount = readCount(buf, 2 * Integer.BYTES);
+        for (int i = 0; i < chainCount; i++) {
+            aliasChains.put(strings[buf.getInt()], List.copyOf(readList(buf, strings)));
+        }
+        
+        // One slot for players without a rank, plus one per rank
+        int slots = readCount(buf, 2 * Integer.BYTES);
+        if (slots != rankHierarchy.size() + 1) {
+            throw new IllegalArgumentException("Rank slots do not match the rank hierarchy");
+        }
+        
+        BitSet[] permissionsByRank = new BitSet[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            long[] words = new long[readCount(buf, Long.BYTES)];
+            buf.asLongBuffer().get(words);
+            buf.position(buf.position() + words.length * Long.BYTES);
+            permissionsByRank[slot] = BitSet.valueOf(words);
+            if (permissionsByRank[slot].length() > commandNames.length) {
+                throw new IllegalArgumentException("Permission bit outside the command table");
+            }
+        }
+        
+        // The allowed command sets are only built when a rank is first synced,
+        // so their ids are checked now
+        int[][] allowedIds = new int[slots][];
+        for (int slot = 0; slot < slots; slot++) {
+            allowedIds[slot] = new int[readCount(buf, Integer.BYTES)];
+            buf.asIntBuffer().get(allowedIds[slot]);
+            buf.position(buf.position() + allowedIds[slot].length * Integer.BYTES);
+            for (int id : allowedIds[slot]) {
+                if (id < 0 || id >= strings.length) {
+                    throw new IllegalArgumentException("String id outside the string table");
+                }
+            }
+        }
+        
+        CommandPolicy.Compiled compiled = new CommandPolicy.Compiled(commandNames, Collections.unmodifiableMap(aliasChains),
+                permissionsByRank, new LazyStringSets(strings, allowedIds));
+        return new CommandPolicy(rankHierarchy, allRanksCommands, bypassCommands, hiddenCommands,
+                commandAliases, rankCommands, settings, compiled);
+    }
+    
+    /**
+     * Read an element count, rejecting counts the rest of the image cannot hold
+     * @param minBytes the least number of bytes each element takes
+     */
+    private static int readCount(ByteBuffer buf, int minBytes) {
+        int count = buf.getInt();
+        if (count < 0 || (long) count * minBytes > buf.remaining()) {
+            throw new IllegalArgumentException("Invalid element count " + count);
+        }
+        return count;
+    }
+    
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[readCount(buf, 1)];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static List<String> readList(ByteBuffer buf, String[] strings) {
+        int count = readCount(buf, Integer.BYTES);
+        List<String> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(strings[buf.getInt()]);
+        }
+        return list;
+    }
+    
+    /**
+     * Write the image of a policy compiled by this mod version from a config with the given hash
+     * The file is replaced atomically, so readers never see a partial image
+     */
+    public static void write(Path path, CommandPolicy policy, byte[] sourceHash, String modVersion) throws IOException {
+        CommandPolicy.Compiled compiled = policy.getCompiled();
+        CommandControlSettings settings = policy.getSettings();
+        
+        // Intern every string, then write the sections as ids
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        internAll(ids, policy.getRankHierarchy());
+        internAll(ids, policy.getAllRanksCommands());
+        internAll(ids, policy.getBypassCommands());
+        internAll(ids, policy.getHiddenCommands());
+        internAll(ids, policy.getCommandAliases().keySet());
+        internAll(ids, policy.getCommandAliases().values());
+        for (Map.Entry<String, Set<String>> entry : policy.getRankCommands().entrySet()) {
+            intern(ids, entry.getKey());
+            internAll(ids, entry.getValue());
+        }
+        intern(ids, settings.metricsBindAddress);
+        internAll(ids, Arrays.asList(compiled.commandNames));
+        for (Map.Entry<String, List<String>> entry : compiled.aliasChains.entrySet()) {
+            intern(ids, entry.getKey());
+            internAll(ids, entry.getValue());
+        }
+        for (Set<String> allowed : compiled.allowedCommandsByRank) {
+            internAll(ids, allowed);
+        }
+        
+        Output out = new Output();
+        out.putInt(MAGIC);
+        out.putInt(FORMAT_VERSION);
+        writeString(out, modVersion);
+        out.put(sourceHash);
+        
+        out.putInt(ids.size());
+        for (String string : ids.keySet()) {
+            writeString(out, string);
+        }
+        
+        writeList(out, ids, policy.getRankHierarchy());
+        writeList(out, ids, policy.getAllRanksCommands());
+        writeList(out, ids, policy.getBypassCommands());
+        writeList(out, ids, policy.getHiddenCommands());
+        
+        out.putInt(policy.getCommandAliases().size());
+        for (Map.Entry<String, String> entry : policy.getCommandAliases().entrySet()) {
+            out.putInt(ids.get(entry.getKey()));
+            out.putInt(ids.get(entry.getValue()));
+        }
+        
+        out.putInt(policy.getRankCommands().size());
+        for (Map.Entry<String, Set<String>> entry : policy.getRankCommands().entrySet()) {
+            out.putInt(ids.get(entry.getKey()));
+            writeList(out, ids, entry.getValue());
+        }
+        
+        out.putInt(settings.resyncPlayersPerTick);
+        out.putInt(settings.suggestionRequestsPerSecond);
+        out.putInt(settings.metricsPort);
+        out.putInt(ids.get(settings.metricsBindAddress));
+        out.put(new byte[] {(byte) (settings.auditLog ? 1 : 0)});
+        out.putInt(settings.auditMaxFileSizeMb);
+        out.putInt(settings.auditMaxFiles);
+        
+        writeList(out, ids, Arrays.asList(compiled.commandNames));
+        
+        out.putInt(compiled.aliasChains.size());
+        for (Map.Entry<String, List<String>> entry : compiled.aliasChains.entrySet()) {
+            out.putInt(ids.get(entry.getKey()));
+            writeList(out, ids, entry.getValue());
+        }
+        
+        out.putInt(compiled.permissionsByRank.length);
+        for (BitSet permissions : compiled.permissionsByRank) {
+            long[] words = permissions.toLongArray();
+            out.putInt(words.length);
+            for (long word : words) {
+                out.putLong(word);
+            }
+        }
+        for (Set<String> allowed : compiled.allowedCommandsByRank) {
+            writeList(out, ids, allowed);
+        }
+        
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = out.toBuffer();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static void intern(Map<String, Integer> ids, String string) {
+        ids.putIfAbsent(string, ids.size());
+    }
+    
+    private static void internAll(Map<String, Integer> ids, Collection<String> strings) {
+        for (String string : strings) {
+            intern(ids, string);
+        }
+    }
+    
+    private static void writeString(Output out, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+    
+    private static void writeList(Output out, Map<String, Integer> ids, Collection<String> strings) {
+        out.putInt(strings.size());
+        for (String string : strings) {
+            out.putInt(ids.get(string));
+        }
+    }
+    
+    /**
+     * Immutable list of string sets that are built from their string ids on first access
+     */
+    private static final class LazyStringSets extends AbstractList<Set<String>> {
+        private final String[] strings;
+        private final int[][] ids;
+        private final AtomicReferenceArray<Set<String>> sets;
+        
+        LazyStringSets(String[] strings, int[][] ids) {
+            this.strings = strings;
+            this.ids = ids;
+            this.sets = new AtomicReferenceArray<>(ids.length);
+        }
+        
+        @Override
+        public Set<String> get(int index) {
+            Set<String> set = sets.get(index);
+            if (set == null) {
+                String[] values = new String[ids[index].length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = strings[ids[index][i]];
+                }
+                set = CommandPolicy.freeze(Arrays.asList(values));
+                if (!sets.compareAndSet(index, null, set)) {
+                    set = sets.get(index);
+                }
+            }
+            return set;
+        }
+        
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
+    
+    /**
+     * Growable big-endian byte buffer
+     */
+    private static final class Output {
+        private ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        
+        private void ensure(int bytes) {
+            if (buf.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+                buf.flip();
+                grown.put(buf);
+                buf = grown;
+            }
+        }
+        
+        void putInt(int value) {
+            ensure(Integer.BYTES);
+            buf.putInt(value);
+        }
+        
+        void putLong(long value) {
+            ensure(Long.BYTES);
+            buf.putLong(value);
+        }
+        
+        void put(byte[] bytes) {
+            ensure(bytes.length);
+            buf.put(bytes);
+        }
+        
+        ByteBuffer toBuffer() {
+            return buf.duplicate().flip();
+        }
+    }
+}
@@ -2,7 +2,11 @@ package com.vincentporath.commandcontrol.mixin;
 
 import com.vincentporath.commandcontrol.CommandControl;
 import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+import com.vincentporath.commandcontrol.util.AuditLog;
 import com.vincentporath.commandcontrol.util.CommandExecutionTracker;
+import com.vincentporath.commandcontrol.util.CommandExecutionTracker.ExecutionContext;
+import com.vincentporath.commandcontrol.util.OpStatusTracker;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
@@ -14,13 +18,13 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 /**
  * Mixin to track the current command being executed.
  * 
- * Strategy: We track the command name in a ThreadLocal so that
- * ServerCommandSourceMixin can check if permission should be granted
- * during hasPermissionLevel() calls.
+ * Strategy: We push an execution context with the permission decision for the
+ * command, so ServerCommandSourceMixin can grant permission during
+ * hasPermissionLevel() calls without checking the config again.
  */
 @Mixin(CommandManager.class)
 public abstract class CommandExecutionMixin {
-
+    
     /**
      * Track the command before execution starts.
      * This allows ServerCommandSourceMixin.hasPermissionLevel to know which command is being checked.
@@ -31,24 +35,35 @@ public abstract class CommandExecutionMixin {
             String command, 
             CallbackInfoReturnable<Integer> cir
     ) {
-        String rootCommand = extractRootCommand(command);
+        // Every execution gets a context (even if not elevated) so nested commands
+        // never inherit the permission of the command that ran them
+        ExecutionContext context = ExecutionContext.NONE;
         
         // Track which command is being executed (for permission checks)
         if (source.getEntity() instanceof ServerPlayerEntity player) {
             // Only track for non-OP players
-            if (!source.getServer().getPlayerManager().isOperator(player.getGameProfile())) {
-                // Check if this command is allowed for the player
-                if (CommandControlConfig.isCommandAllowed(player, rootCommand)) {
-                    CommandExecutionTracker.setCurrentCommand(rootCommand);
+            if (!OpStatusTracker.isOperator(player.getUuid())) {
+                String rootCommand = extractRootCommand(command);
+                CommandPolicy policy = CommandControlConfig.getPolicy();
+                int commandId = policy.getCommandId(rootCommand);
+                
+                // Check if this command is allowed for the player (fully, or through sub-command rules)
+                int rankIndex = CommandControlConfig.getPlayerRankIndex(policy, player);
+                if (policy.isCommandReachable(rankIndex, commandId, rootCommand)) {
+                    context = new ExecutionContext(player.getUuid(), rootCommand, policy, commandId, rankIndex, true);
                     CommandControl.LOGGER.debug("[CommandControls] Tracking command '{}' for player {}", 
                             rootCommand, player.getName().getString());
                 }
             }
         }
+        
+        CommandExecutionTracker.push(context);
     }
     
     /**
      * Clear command tracking after execution completes.
+     * Commands that only ran because of our grants are audited as elevated - commands
+     * everyone may use anyway (/msg, /help) are not.
      */
     @Inject(method = "executeWithPrefix", at = @At("RETURN"))
     private void commandcontrol$trackCommandEnd(
@@ -56,7 +71,11 @@ public abstract class CommandExecutionMixin {
             String command, 
             CallbackInfoReturnable<Integer> cir
     ) {
-        CommandExecutionTracker.clearCurrentCommand();
+        ExecutionContext context = CommandExecutionTracker.pop();
+        if (context != null && context.isElevated() && source.getEntity() instanceof ServerPlayerEntity player) {
+            AuditLog.record(player.getUuid(), player.getName().getString(), command,
+                    AuditLog.Decision.ELEVATED, context.policy.getRankName(context.rankIndex));
+        }
     }
     
     /**
@@ -1,15 +1,16 @@
 package com.vincentporath.commandcontrol.mixin;
 
 import com.mojang.brigadier.CommandDispatcher;
-import com.mojang.brigadier.arguments.ArgumentType;
-import com.mojang.brigadier.tree.ArgumentCommandNode;
-import com.mojang.brigadier.tree.CommandNode;
-import com.mojang.brigadier.tree.LiteralCommandNode;
 import com.mojang.brigadier.tree.RootCommandNode;
 import com.vincentporath.commandcontrol.CommandControl;
 import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+import com.vincentporath.commandcontrol.network.CommandTreeCache;
+import com.vincentporath.commandcontrol.network.CommandTreeCompiler;
+import com.vincentporath.commandcontrol.network.DispatcherSnapshot;
+import com.vincentporath.commandcontrol.util.AuditLog;
+import com.vincentporath.commandcontrol.util.PerfMetrics;
 import net.minecraft.command.CommandSource;
-import net.minecraft.command.argument.ArgumentTypes;
 import net.minecraft.network.packet.s2c.play.CommandTreeS2CPacket;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
@@ -18,23 +19,28 @@ import net.minecraft.text.Text;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 import com.mojang.brigadier.ParseResults;
 
-import java.util.IdentityHashMap;
-import java.util.Map;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Server-side mixin to filter command suggestions and block unauthorized commands
  */
 @Mixin(CommandManager.class)
 public abstract class CommandManagerMixin {
-
+    
     @Shadow @Final private CommandDispatcher<ServerCommandSource> dispatcher;
-
+    
+    // Set while sending the unfiltered tree after a failed build
+    @Unique
+    private boolean commandcontrol$sendingVanillaTree = false;
+    
     /**
      * Filter command suggestions sent to players.
      * We use an elevated source so that vanilla's makeCommandTree includes full argument structure,
@@ -43,40 +49,73 @@ public abstract class CommandManagerMixin {
     @Inject(method = "sendCommandTree", at = @At("HEAD"), cancellable = true)
     private void commandcontrol$filterCommandTree(ServerPlayerEntity player, CallbackInfo ci) {
         // OP level 4 sees all commands
-        if (player.hasPermissionLevel(4)) {
+        if (player.hasPermissionLevel(4) || commandcontrol$sendingVanillaTree) {
             return;
         }
         
         try {
-            // Use elevated source so vanilla includes full argument structure
-            ServerCommandSource elevatedSource = player.getCommandSource().withLevel(4);
+            // Players of the same rank get the same tree - build it once per rank and share the packet
+            // The build runs off-thread on a snapshot of the dispatcher; the player gets the tree once it is ready
+            CommandPolicy policy = CommandControlConfig.getPolicy();
+            int rankIndex = CommandControlConfig.getPlayerRankIndex(policy, player);
+            DispatcherSnapshot snapshot = DispatcherSnapshot.of(this.dispatcher.getRoot());
             
-            // Build command tree using vanilla method with elevated permissions
-            Map<CommandNode<ServerCommandSource>, CommandNode<CommandSource>> visitedNodes = new IdentityHashMap<>();
-            RootCommandNode<CommandSource> resultRoot = new RootCommandNode<>();
-            visitedNodes.put(this.dispatcher.getRoot(), resultRoot);
+            // Requirements may inspect the player and world, so redirect targets are checked here
+            // on the server thread, with the player's own source elevated like vanilla's full tree
+            BitSet usableRedirects = snapshot.getUsableRedirects(player.getCommandSource().withLevel(4));
             
-            // Process each top-level command
-            for (CommandNode<ServerCommandSource> child : this.dispatcher.getRoot().getChildren()) {
-                String commandName = child.getName().toLowerCase();
-                
-                // Check if command is allowed for this player via our config
-                if (CommandControlConfig.isCommandAllowed(player, commandName)) {
-                    // Use elevated source for building tree so all arguments are included
-                    buildFilteredTree(child, resultRoot, elevatedSource, visitedNodes, resultRoot);
-                }
-            }
+            CompletableFuture<CommandTreeS2CPacket> packet = CommandTreeCache.getOrBuild(snapshot, policy, rankIndex,
+                    usableRedirects, () -> buildFilteredPacket(snapshot, usableRedirects, policy, rankIndex));
             
-            // Send filtered packet
-            player.networkHandler.sendPacket(new CommandTreeS2CPacket(resultRoot));
+            // Send filtered packet, or the vanilla tree if the build fails
+            CommandTreeCache.deliver(player, packet, this::commandcontrol$sendVanillaTree);
             ci.cancel();
-            
+        
         } catch (Exception e) {
             CommandControl.LOGGER.error("[CommandControls] Error filtering command tree", e);
             // Fall back to vanilla behavior on error
         }
     }
     
+    /**
+     * Send the unfiltered vanilla tree, as done for every error while filtering
+     */
+    @Unique
+    private void commandcontrol$sendVanillaTree(ServerPlayerEntity player) {
+        commandcontrol$sendingVanillaTree = true;
+        try {
+            ((CommandManager) (Object) this).sendCommandTree(player);
+        } finally {
+            commandcontrol$sendingVanillaTree = false;
+        }
+    }
+    
+    /**
+     * Build the filtered command tree packet for a permission profile
+     * Runs on a tree builder thread - only reads the dispatcher snapshot and the immutable policy
+     */
+    private static CommandTreeS2CPacket buildFilteredPacket(
+            DispatcherSnapshot snapshot,
+            BitSet usableRedirects,
+            CommandPolicy policy,
+            int rankIndex
+    ) {
+        long start = PerfMetrics.start();
+        
+        // Root command subtrees are compiled once per dispatcher snapshot so vanilla's argument
+        // structure is included, then linked in for the allowed roots
+        CommandTreeCompiler compiler = CommandTreeCompiler.forSnapshot(snapshot, usableRedirects);
+        
+        // Roots that are only partially allowed are pruned to their allowed paths
+        RootCommandNode<CommandSource> resultRoot = compiler.assemble(
+                commandName -> policy.isCommandAllowed(rankIndex, commandName),
+                commandName -> policy.getPathRules(rankIndex, commandName));
+        
+        CommandTreeS2CPacket packet = new CommandTreeS2CPacket(resultRoot);
+        PerfMetrics.TREE_BUILD.recordSince(start);
+        return packet;
+    }
+    
     /**
      * Block execution of unauthorized commands
      * Note: This is a safety check - the command tree filtering should already hide unauthorized commands
@@ -100,123 +139,18 @@ public abstract class CommandManagerMixin {
             
             // Check if command is allowed - if so, don't block
             // (This handles cases where the source level wasn't elevated for some reason)
-            if (CommandControlConfig.isCommandAllowed(player, baseCommand)) {
+            // Partially allowed commands were already narrowed down by the node requirements during parsing
+            if (CommandControlConfig.isCommandReachable(player, baseCommand)) {
                 return;
             }
             
+            PerfMetrics.recordDenial(baseCommand);
+            CommandPolicy policy = CommandControlConfig.getPolicy();
+            int rankIndex = CommandControlConfig.getPlayerRankIndex(policy, player);
+            AuditLog.record(player.getUuid(), player.getName().getString(), command,
+                    AuditLog.Decision.DENIED, policy.getRankName(rankIndex));
             player.sendMessage(Text.literal("§c[CommandControls] You do not have permission for this command."), false);
             cir.setReturnValue(0);
         }
     }
-    
-    /**
-     * Recursively build filtered command tree
-     * We skip canUse() checks entirely because:
-     * 1. We already filter at the top level via our config's isCommandAllowed()
-     * 2. Some mods (like CommandAliases) use custom predicates that fail even with elevated permissions
-     * 3. The server still validates execution permissions - this only affects what's shown in tab-complete
-     */
-    @SuppressWarnings({"unchecked", "rawtypes"})
-    private void buildFilteredTree(
-            CommandNode<ServerCommandSource> node,
-            CommandNode<CommandSource> parent,
-            ServerCommandSource elevatedSource,
-            Map<CommandNode<ServerCommandSource>, CommandNode<CommandSource>> visitedNodes,
-            RootCommandNode<CommandSource> root
-    ) {
-        CommandNode<CommandSource> existingNode = visitedNodes.get(node);
-        if (existingNode != null) {
-            parent.addChild(existingNode);
-            return;
-        }
-        
-        // Skip canUse() entirely - we filter via our config and server validates execution anyway
-        // This fixes compatibility with mods that use custom requirement predicates (like CommandAliases)
-        
-        CommandNode<CommandSource> newNode = createNodeCopy(node, visitedNodes, elevatedSource, root);
-        if (newNode == null) {
-            return;
-        }
-        
-        visitedNodes.put(node, newNode);;
-        parent.addChild(newNode);
-        
-        // Process ALL children with elevated permissions
-        for (CommandNode<ServerCommandSource> child : node.getChildren()) {
-            buildFilteredTree(child, newNode, elevatedSource, visitedNodes, root);
-        }
-    }
-    
-    /**
-     * Create a CommandSource copy of a ServerCommandSource node
-     * Now properly handles redirects by ensuring redirect target is processed first
-     */
-    @SuppressWarnings({"unchecked", "rawtypes"})
-    private CommandNode<CommandSource> createNodeCopy(
-            CommandNode<ServerCommandSource> node,
-            Map<CommandNode<ServerCommandSource>, CommandNode<CommandSource>> visitedNodes,
-            ServerCommandSource elevatedSource,
-            RootCommandNode<CommandSource> root
-    ) {
-        // Handle redirect - ensure redirect target exists FIRST
-        CommandNode<CommandSource> redirectTarget = null;
-        if (node.getRedirect() != null) {
-            redirectTarget = visitedNodes.get(node.getRedirect());
-            
-            // If redirect target doesn't exist yet, we need to process it first
-            if (redirectTarget == null) {
-                CommandNode<ServerCommandSource> redirectNode = node.getRedirect();
-                
-                // Process the redirect target
-                if (redirectNode.canUse(elevatedSource)) {
-                    CommandNode<CommandSource> newRedirectTarget = createNodeCopy(redirectNode, visitedNodes, elevatedSource, root);
-                    if (newRedirectTarget != null) {
-                        visitedNodes.put(redirectNode, newRedirectTarget);
-                        // Add redirect target to root if it's a top-level command
-                        if (redirectNode.getClass().equals(LiteralCommandNode.class)) {
-                            root.addChild(newRedirectTarget);
-                        }
-                        redirectTarget = newRedirectTarget;
-                        
-                        // Also process children of the redirect target
-                        for (CommandNode<ServerCommandSource> child : redirectNode.getChildren()) {
-                            buildFilteredTree(child, newRedirectTarget, elevatedSource, visitedNodes, root);
-                        }
-                    }
-                }
-            }
-        }
-        
-        if (node instanceof LiteralCommandNode literal) {
-            LiteralCommandNode<CommandSource> newNode = new LiteralCommandNode<>(
-                    literal.getLiteral(),
-                    null,  // command
-                    s -> true,  // always allow
-                    redirectTarget,
-                    null,  // redirect modifier - not needed for client tree
-                    literal.isFork()
-            );
-            return newNode;
-        } else if (node instanceof ArgumentCommandNode argument) {
-            ArgumentType<?> type = argument.getType();
-            
-            // Check if argument type is serializable
-            if (ArgumentTypes.getArgumentTypeProperties(type) == null) {
-                return null;
-            }
-            
-            return new ArgumentCommandNode<>(
-                    argument.getName(),
-                    type,
-                    null,  // command
-                    s -> true,  // always allow
-                    redirectTarget,
-                    null,  // redirect modifier - not needed for client tree
-                    argument.isFork(),
-                    argument.getCustomSuggestions()
-            );
-        }
-        
-        return null;
-    }
 }
@@ -1,14 +1,10 @@
 package com.vincentporath.commandcontrol.mixin;
 
-import com.mojang.brigadier.CommandDispatcher;
-import com.mojang.brigadier.StringReader;
-import com.mojang.brigadier.suggestion.Suggestions;
 import com.vincentporath.commandcontrol.CommandControl;
 import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+import com.vincentporath.commandcontrol.network.SuggestionPipeline;
 import net.minecraft.network.packet.c2s.play.RequestCommandCompletionsC2SPacket;
-import net.minecraft.network.packet.s2c.play.CommandSuggestionsS2CPacket;
-import net.minecraft.server.command.CommandManager;
-import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayNetworkHandler;
 import net.minecraft.server.network.ServerPlayerEntity;
 import org.spongepowered.asm.mixin.Mixin;
@@ -17,8 +13,6 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
-import java.util.concurrent.CompletableFuture;
-
 /**
  * Mixin to handle command suggestions with elevated permissions.
  * This ensures that allowed commands show proper argument suggestions.
@@ -30,8 +24,18 @@ public class CommandSuggestionsMixin {
 
     /**
      * Intercept suggestion requests and provide suggestions with elevated permissions.
+     * Injected after vanilla hands the packet over to the server thread - at HEAD this
+     * would run on the network thread first.
      */
-    @Inject(method = "onRequestCommandCompletions", at = @At("HEAD"), cancellable = true)
+    @Inject(
+            method = "onRequestCommandCompletions",
+            at = @At(
+                    value = "INVOKE",
+                    target = "Lnet/minecraft/network/NetworkThreadUtils;forceMainThread(Lnet/minecraft/network/packet/Packet;Lnet/minecraft/network/listener/PacketListener;Lnet/minecraft/server/world/ServerWorld;)V",
+                    shift = At.Shift.AFTER
+            ),
+            cancellable = true
+    )
     private void commandcontrol$handleSuggestionsWithElevatedPermissions(
             RequestCommandCompletionsC2SPacket packet,
             CallbackInfo ci
@@ -45,34 +49,18 @@ public class CommandSuggestionsMixin {
         String rootCommand = extractRootCommand(command);
         
         // Check if the command is allowed for this player
-        if (CommandControlConfig.isCommandAllowed(player, rootCommand)) {
+        CommandPolicy policy = CommandControlConfig.getPolicy();
+        int rankIndex = CommandControlConfig.getPlayerRankIndex(policy, player);
+        if (policy.isCommandReachable(rankIndex, rootCommand)) {
             CommandControl.LOGGER.debug("[CommandControls] Providing elevated suggestions for {} -> /{}", 
                 player.getName().getString(), rootCommand);
             
-            // Create elevated source
-            ServerCommandSource elevatedSource = player.getCommandSource().withLevel(4);
-            
-            // Get the command manager
-            CommandManager commandManager = player.getServer().getCommandManager();
-            CommandDispatcher<ServerCommandSource> dispatcher = commandManager.getDispatcher();
-            
-            // Parse with elevated source
-            StringReader reader = new StringReader(command);
-            if (reader.canRead() && reader.peek() == '/') {
-                reader.skip();
-            }
-            
-            var parseResults = dispatcher.parse(reader, elevatedSource);
-            
-            // Get suggestions
-            CompletableFuture<Suggestions> future = dispatcher.getCompletionSuggestions(parseResults);
-            
-            int completionId = packet.getCompletionId();
-            future.thenAccept(suggestions -> {
-                player.networkHandler.sendPacket(new CommandSuggestionsS2CPacket(completionId, suggestions));
-            });
+            // Only the latest request per player is answered, within the per-second budget
+            SuggestionPipeline.submit(player, packet.getCompletionId(), command, policy, rankIndex);
             
             ci.cancel();
+        } else {
+            SuggestionPipeline.supersede(player.getUuid(), packet.getCompletionId());
         }
     }
     
@@ -1,6 +1,7 @@
 package com.vincentporath.commandcontrol.mixin;
 
-import com.vincentporath.commandcontrol.CommandControl;
+import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.network.ResyncScheduler;
 import net.minecraft.server.dedicated.command.OpCommand;
 import net.minecraft.server.command.ServerCommandSource;
 import com.mojang.authlib.GameProfile;
@@ -19,7 +20,11 @@ public class OpCommandMixin {
 
     @Inject(method = "op", at = @At("RETURN"))
     private static void commandcontrol$onOp(ServerCommandSource source, Collection<GameProfile> targets, CallbackInfoReturnable<Integer> cir) {
-        // Trigger resync after /op is executed
-        CommandControl.triggerOpResync();
+        // Only the targets' permissions changed - resync just them
+        for (GameProfile target : targets) {
+            // OP level is the rank fallback, so the target's cached rank is stale now
+            CommandControlConfig.invalidatePlayerRank(target.getId());
+            ResyncScheduler.schedule(target.getId());
+        }
     }
 }
@@ -0,0 +1,27 @@
+package com.vincentporath.commandcontrol.mixin;
+
+import com.mojang.authlib.GameProfile;
+import com.vincentporath.commandcontrol.util.OpStatusTracker;
+import net.minecraft.server.PlayerManager;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Mixin to detect changes to the operator list
+ * Catches /op, /deop and mods that change operators directly
+ */
+@Mixin(PlayerManager.class)
+public class PlayerManagerMixin {
+    
+    @Inject(method = "addToOperators", at = @At("RETURN"))
+    private void commandcontrol$onAddToOperators(GameProfile profile, CallbackInfo ci) {
+        OpStatusTracker.refresh(((PlayerManager) (Object) this).getServer(), profile.getId());
+    }
+    
+    @Inject(method = "removeFromOperators", at = @At("RETURN"))
+    private void commandcontrol$onRemoveFromOperators(GameProfile profile, CallbackInfo ci) {
+        OpStatusTracker.refresh(((PlayerManager) (Object) this).getServer(), profile.getId());
+    }
+}
@@ -2,10 +2,14 @@ package com.vincentporath.commandcontrol.mixin;
 
 import com.vincentporath.commandcontrol.config.CommandControlConfig;
 import com.vincentporath.commandcontrol.util.CommandExecutionTracker;
+import com.vincentporath.commandcontrol.util.CommandExecutionTracker.ExecutionContext;
+import com.vincentporath.commandcontrol.util.OpStatusTracker;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
@@ -16,13 +20,17 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
  */
 @Mixin(ServerCommandSource.class)
 public abstract class ServerCommandSourceMixin {
-
+    
+    @Shadow
+    @Final
+    private int level;
+    
     @Shadow
     public abstract boolean isExecutedByPlayer();
     
     @Shadow
     public abstract ServerPlayerEntity getPlayer();
-
+    
     /**
      * Override hasPermissionLevel to allow commands from config.
      * This is called when Minecraft/mods check if a player can execute a command.
@@ -31,6 +39,12 @@ public abstract class ServerCommandSourceMixin {
      */
     @Inject(method = "hasPermissionLevel", at = @At("HEAD"), cancellable = true)
     private void commandcontrol$overridePermissionCheck(int level, CallbackInfoReturnable<Boolean> cir) {
+        // Only override while an allowed command is being executed (a field read)
+        ExecutionContext context = CommandExecutionTracker.current();
+        if (context == null || !context.allowed) {
+            return;
+        }
+        
         // Only override for players
         if (!isExecutedByPlayer()) {
             return;
@@ -42,21 +56,33 @@ public abstract class ServerCommandSourceMixin {
                 return;
             }
             
-            // Check OP level directly via the game profile to avoid recursion
-            int opLevel = player.server.getPermissionLevel(player.getGameProfile());
-            if (opLevel >= 4) {
-                return; // OP players have full access
+            // The executing player - decision was made when the command started
+            if (player.getUuid().equals(context.playerUuid)) {
+                commandcontrol$grant(context, level, cir);
+                return;
             }
             
-            // Check if we have a tracked command and if it's allowed
-            String currentCommand = CommandExecutionTracker.getCurrentCommand();
-            if (currentCommand != null && !currentCommand.isEmpty()) {
-                if (CommandControlConfig.isCommandAllowed(player, currentCommand)) {
-                    cir.setReturnValue(true);
-                }
+            // Another player's source (e.g. /execute as) - check their own permission for the command
+            if (OpStatusTracker.isOperator(player.getUuid())) {
+                return; // OP players have full access
+            }
+            int rankIndex = CommandControlConfig.getPlayerRankIndex(context.policy, player);
+            if (context.policy.isCommandReachable(rankIndex, context.commandId, context.rootCommand)) {
+                commandcontrol$grant(context, level, cir);
             }
         } catch (Exception e) {
             // Silently fail - don't override permission
         }
     }
+    
+    /**
+     * Pass the check, noting an elevation if the source's own level would not have
+     */
+    @Unique
+    private void commandcontrol$grant(ExecutionContext context, int requiredLevel, CallbackInfoReturnable<Boolean> cir) {
+        if (this.level < requiredLevel) {
+            context.markElevated();
+        }
+        cir.setReturnValue(true);
+    }
 }
@@ -5,93 +5,308 @@ import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
 import net.minecraft.network.PacketByteBuf;
 import net.minecraft.util.Identifier;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Network handler for syncing allowed commands from server to client
+ *
+ * Every sync carries a version. The client gets a full snapshot on join and afterwards
+ * only add/remove deltas against the version it already has, or an "unchanged" ack.
+ * If the client notices a version gap it asks for a new snapshot on {@link #REQUEST_CHANNEL}.
+ *
+ * Command names are sent once per connection: each packet appends the names the client
+ * has not seen yet to a string table, and the command sets themselves are sent as ids
+ * into that table (as a varint list or a bitmap, whichever is smaller).
+ * A snapshot starts a new table.
+ *
+ * The versioned format has its own channel ({@link #SYNC_CHANNEL_V3}). Clients that can only
+ * receive on {@link #SYNC_CHANNEL} get the old unversioned full lists there, since they would
+ * read the new markers as a command count.
  */
 public class CommandSyncHandler {
     
+    // Unversioned full lists, for clients (and servers) from before versioned syncs
     public static final Identifier SYNC_CHANNEL = new Identifier(CommandControl.MOD_ID, "command_sync");
     
-    // Special marker for full access (OP players)
+    // Versioned snapshots, deltas and acks
+    public static final Identifier SYNC_CHANNEL_V3 = new Identifier(CommandControl.MOD_ID, "command_sync_v3");
+    
+    // Client -> server: request a full snapshot (sent when the client detects a version gap)
+    public static final Identifier REQUEST_CHANNEL = new Identifier(CommandControl.MOD_ID, "command_sync_request");
+    
+    // Special markers in place of the command count
     private static final int FULL_ACCESS_MARKER = -1;
+    private static final int SNAPSHOT_MARKER = -2;
+    private static final int DELTA_MARKER = -3;
+    private static final int UNCHANGED_MARKER = -4;
+    
+    // Encodings of an id set
+    private static final byte ID_LIST = 0;
+    private static final byte ID_BITMAP = 1;
+    
+    /**
+     * Kind of sync packet
+     */
+    public enum Kind {
+        FULL_ACCESS,
+        SNAPSHOT,
+        DELTA,
+        UNCHANGED
+    }
     
     /**
-     * Create a packet buffer with the allowed commands and hidden commands
+     * Create a packet with the complete allowed and hidden commands
+     * @param names the whole string table of the connection (a snapshot starts a new table)
      */
-    public static PacketByteBuf createSyncPacket(Set<String> allowedCommands, Set<String> hiddenCommands) {
+    public static PacketByteBuf createSnapshotPacket(int version, List<String> names, BitSet allowedIds, BitSet hiddenIds) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeVarInt(SNAPSHOT_MARKER);
+        buf.writeVarInt(version);
+        writeNames(buf, 0, names);
+        writeIds(buf, allowedIds);
+        writeIds(buf, hiddenIds);
+        return buf;
+    }
+    
+    /**
+     * Create a packet with the changes since the client's version
+     * @param namesStart id of the first new name (the size of the client's table)
+     * @param newNames names appended to the string table by this packet
+     */
+    public static PacketByteBuf createDeltaPacket(
+            int baseVersion,
+            int version,
+            int namesStart,
+            List<String> newNames,
+            BitSet addedAllowed,
+            BitSet removedAllowed,
+            BitSet addedHidden,
+            BitSet removedHidden
+    ) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeVarInt(DELTA_MARKER);
+        buf.writeVarInt(baseVersion);
+        buf.writeVarInt(version);
+        writeNames(buf, namesStart, newNames);
+        writeIds(buf, addedAllowed);
+        writeIds(buf, removedAllowed);
+        writeIds(buf, addedHidden);
+        writeIds(buf, removedHidden);
+        return buf;
+    }
+    
+    /**
+     * Create a packet confirming that nothing changed since the given version
+     */
+    public static PacketByteBuf createUnchangedPacket(int version) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeVarInt(UNCHANGED_MARKER);
+        buf.writeVarInt(version);
+        return buf;
+    }
+    
+    /**
+     * Create a packet indicating full access (OP player)
+     */
+    public static PacketByteBuf createFullAccessPacket(int version) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeVarInt(FULL_ACCESS_MARKER); // -1 means full access
+        buf.writeVarInt(version);
+        return buf;
+    }
+    
+    /**
+     * Create an unversioned packet with the complete allowed and hidden commands ({@link #SYNC_CHANNEL})
+     */
+    public static PacketByteBuf createLegacySyncPacket(Set<String> allowedCommands, Set<String> hiddenCommands) {
         PacketByteBuf buf = PacketByteBufs.create();
-        
-        // Write the number of allowed commands
         buf.writeVarInt(allowedCommands.size());
-        
-        // Write each allowed command
         for (String command : allowedCommands) {
             buf.writeString(command);
         }
-        
-        // Write the number of hidden commands
         buf.writeVarInt(hiddenCommands.size());
-        
-        // Write each hidden command
         for (String command : hiddenCommands) {
             buf.writeString(command);
         }
-        
         return buf;
     }
     
     /**
-     * Create a packet indicating full access (OP player)
+     * Create an unversioned full access packet ({@link #SYNC_CHANNEL})
      */
-    public static PacketByteBuf createFullAccessPacket() {
+    public static PacketByteBuf createLegacyFullAccessPacket() {
         PacketByteBuf buf = PacketByteBufs.create();
-        buf.writeVarInt(FULL_ACCESS_MARKER); // -1 means full access
+        buf.writeVarInt(FULL_ACCESS_MARKER);
         return buf;
     }
     
+    private static void writeNames(PacketByteBuf buf, int start, List<String> names) {
+        buf.writeVarInt(start);
+        buf.writeVarInt(names.size());
+        for (String name : names) {
+            buf.writeString(name);
+        }
+    }
+    
+    private static List<String> readNames(PacketByteBuf buf) {
+        int count = buf.readVarInt();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(buf.readString());
+        }
+        return names;
+    }
+    
+    /**
+     * Write an id set as a varint list or a bitmap, whichever is smaller
+     */
+    private static void writeIds(PacketByteBuf buf, BitSet ids) {
+        int listSize = PacketByteBuf.getVarIntLength(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            listSize += PacketByteBuf.getVarIntLength(id);
+        }
+        long[] words = ids.toLongArray();
+        int bitmapSize = PacketByteBuf.getVarIntLength(words.length) + words.length * Long.BYTES;
+        
+        if (listSize <= bitmapSize) {
+            buf.writeByte(ID_LIST);
+            buf.writeVarInt(ids.cardinality());
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                buf.writeVarInt(id);
+            }
+        } else {
+            buf.writeByte(ID_BITMAP);
+            buf.writeVarInt(words.length);
+            for (long word : words) {
+                buf.writeLong(word);
+            }
+        }
+    }
+    
+    private static BitSet readIds(PacketByteBuf buf) {
+        byte encoding = buf.readByte();
+        int count = buf.readVarInt();
+        if (encoding == ID_BITMAP) {
+            long[] words = new long[count];
+            for (int i = 0; i < count; i++) {
+                words[i] = buf.readLong();
+            }
+            return BitSet.valueOf(words);
+        }
+        
+        BitSet ids = new BitSet();
+        for (int i = 0; i < count; i++) {
+            ids.set(buf.readVarInt());
+        }
+        return ids;
+    }
+    
     /**
      * Result of reading a sync packet
+     * For deltas, allowedIds/hiddenIds hold the added commands
      */
     public static class SyncData {
-        public final Set<String> allowedCommands;
-        public final Set<String> hiddenCommands;
+        public final Kind kind;
+        public final int baseVersion;
+        public final int version;
+        public final int namesStart;
+        public final List<String> newNames;
+        public final BitSet allowedIds;
+        public final BitSet hiddenIds;
+        public final BitSet removedAllowedIds;
+        public final BitSet removedHiddenIds;
         public final boolean fullAccess;
         
-        public SyncData(Set<String> allowedCommands, Set<String> hiddenCommands, boolean fullAccess) {
-            this.allowedCommands = allowedCommands;
-            this.hiddenCommands = hiddenCommands;
-            this.fullAccess = fullAccess;
+        public SyncData(
+                Kind kind,
+                int baseVersion,
+                int version,
+                int namesStart,
+                List<String> newNames,
+                BitSet allowedIds,
+                BitSet hiddenIds,
+                BitSet removedAllowedIds,
+                BitSet removedHiddenIds
+        ) {
+            this.kind = kind;
+            this.baseVersion = baseVersion;
+            this.version = version;
+            this.namesStart = namesStart;
+            this.newNames = newNames;
+            this.allowedIds = allowedIds;
+            this.hiddenIds = hiddenIds;
+            this.removedAllowedIds = removedAllowedIds;
+            this.removedHiddenIds = removedHiddenIds;
+            this.fullAccess = kind == Kind.FULL_ACCESS;
         }
     }
     
     /**
-     * Read allowed and hidden commands from a packet buffer
-     * Returns SyncData with fullAccess=true if this is a full access packet
+     * Read a versioned sync packet of any kind ({@link #SYNC_CHANNEL_V3})
      */
-    public static SyncData readSyncPacketV2(PacketByteBuf buf) {
-        int count = buf.readVarInt();
+    public static SyncData readSyncPacketV3(PacketByteBuf buf) {
+        int marker = buf.readVarInt();
         
-        // Check for full access marker
+        switch (marker) {
+            case FULL_ACCESS_MARKER: {
+                int version = buf.readVarInt();
+                return new SyncData(Kind.FULL_ACCESS, version, version, 0, List.of(), null, null, null, null);
+            }
+            case SNAPSHOT_MARKER: {
+                int version = buf.readVarInt();
+                int namesStart = buf.readVarInt();
+                List<String> names = readNames(buf);
+                BitSet allowed = readIds(buf);
+                BitSet hidden = readIds(buf);
+                return new SyncData(Kind.SNAPSHOT, version, version, namesStart, names, allowed, hidden, null, null);
+            }
+            case DELTA_MARKER: {
+                int baseVersion = buf.readVarInt();
+                int version = buf.readVarInt();
+                int namesStart = buf.readVarInt();
+                List<String> names = readNames(buf);
+                BitSet addedAllowed = readIds(buf);
+                BitSet removedAllowed = readIds(buf);
+                BitSet addedHidden = readIds(buf);
+                BitSet removedHidden = readIds(buf);
+                return new SyncData(Kind.DELTA, baseVersion, version, namesStart, names,
+                        addedAllowed, addedHidden, removedAllowed, removedHidden);
+            }
+            case UNCHANGED_MARKER: {
+                int version = buf.readVarInt();
+                return new SyncData(Kind.UNCHANGED, version, version, 0, List.of(), null, null, null, null);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown command sync packet marker: " + marker);
+        }
+    }
+    
+    /**
+     * Read an unversioned sync packet ({@link #SYNC_CHANNEL}, sent by older servers)
+     * The full names are turned into a string table, so it applies like a snapshot of version 0
+     */
+    public static SyncData readLegacySyncPacket(PacketByteBuf buf) {
+        int count = buf.readVarInt();
         if (count == FULL_ACCESS_MARKER) {
-            return new SyncData(null, null, true);
+            return new SyncData(Kind.FULL_ACCESS, 0, 0, 0, List.of(), null, null, null, null);
         }
         
-        // Read allowed commands
-        Set<String> allowedCommands = new HashSet<>();
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> ids = new HashMap<>();
+        BitSet allowed = new BitSet();
         for (int i = 0; i < count; i++) {
-            allowedCommands.add(buf.readString());
+            allowed.set(ids.computeIfAbsent(buf.readString(), name -> addName(names, name)));
         }
-        
-        // Read hidden commands
-        Set<String> hiddenCommands = new HashSet<>();
+        BitSet hidden = new BitSet();
         int hiddenCount = buf.readVarInt();
         for (int i = 0; i < hiddenCount; i++) {
-            hiddenCommands.add(buf.readString());
+            hidden.set(ids.computeIfAbsent(buf.readString(), name -> addName(names, name)));
         }
-        
-        return new SyncData(allowedCommands, hiddenCommands, false);
+        return new SyncData(Kind.SNAPSHOT, 0, 0, 0, names, allowed, hidden, null, null);
+    }
+    
+    private static int addName(List<String> names, String name) {
+        names.add(name);
+        return names.size() - 1;
     }
 }
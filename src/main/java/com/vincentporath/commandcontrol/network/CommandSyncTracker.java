@@ -0,0 +1,166 @@
+package com.vincentporath.commandcontrol.network;
+
+import com.vincentporath.commandcontrol.CommandControl;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what was last synced to each player, so later syncs can be sent as deltas.
+ * Also holds the player's connection string table: command names are given ids in the
+ * order they were first sent, and the client keeps the same table.
+ * Only used on the server thread.
+ */
+public class CommandSyncTracker {
+    
+    private static final Map<UUID, SyncState> states = new ConcurrentHashMap<>();
+    
+    // Snapshot requests from clients are answered at most once per interval and player;
+    // requests within the interval are answered once it is over
+    private static final long SNAPSHOT_REQUEST_INTERVAL_MS = 1000;
+    private static final Map<UUID, Long> lastSnapshotRequests = new ConcurrentHashMap<>();
+    private static final Set<UUID> deferredSnapshotRequests = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * Build the sync packet for a player and remember the state it establishes on the client
+     * Sends a full snapshot if nothing (or full access) was synced before, otherwise a delta
+     * or an "unchanged" ack
+     */
+    public static PacketByteBuf createPacketFor(UUID uuid, Set<String> allowedCommands, Set<String> hiddenCommands) {
+        SyncState state = states.get(uuid);
+        
+        if (state == null || state.fullAccess) {
+            // A snapshot starts a new string table
+            SyncState snapshot = new SyncState(state != null ? state.version + 1 : 1);
+            snapshot.allowedIds = snapshot.toIds(allowedCommands);
+            snapshot.hiddenIds = snapshot.toIds(hiddenCommands);
+            states.put(uuid, snapshot);
+            return CommandSyncHandler.createSnapshotPacket(snapshot.version, snapshot.names, snapshot.allowedIds, snapshot.hiddenIds);
+        }
+        
+        int namesStart = state.names.size();
+        BitSet allowedIds = state.toIds(allowedCommands);
+        BitSet hiddenIds = state.toIds(hiddenCommands);
+        
+        if (allowedIds.equals(state.allowedIds) && hiddenIds.equals(state.hiddenIds)) {
+            return CommandSyncHandler.createUnchangedPacket(state.version);
+        }
+        
+        int baseVersion = state.version;
+        PacketByteBuf packet = CommandSyncHandler.createDeltaPacket(baseVersion, baseVersion + 1,
+                namesStart, state.names.subList(namesStart, state.names.size()),
+                difference(allowedIds, state.allowedIds), difference(state.allowedIds, allowedIds),
+                difference(hiddenIds, state.hiddenIds), difference(state.hiddenIds, hiddenIds));
+        
+        state.version = baseVersion + 1;
+        state.allowedIds = allowedIds;
+        state.hiddenIds = hiddenIds;
+        return packet;
+    }
+    
+    /**
+     * Build the full access packet for an OP player
+     */
+    public static PacketByteBuf createFullAccessPacketFor(UUID uuid) {
+        SyncState state = states.get(uuid);
+        if (state != null && state.fullAccess) {
+            return CommandSyncHandler.createUnchangedPacket(state.version);
+        }
+        
+        SyncState fullAccess = new SyncState(state != null ? state.version + 1 : 1);
+        fullAccess.fullAccess = true;
+        states.put(uuid, fullAccess);
+        return CommandSyncHandler.createFullAccessPacket(fullAccess.version);
+    }
+    
+    /**
+     * Forget what was synced so the next sync is a full snapshot
+     * Called on join and when the client reports a version gap
+     */
+    public static void reset(UUID uuid) {
+        states.remove(uuid);
+    }
+    
+    /**
+     * Forget everything about a player (called on disconnect)
+     */
+    public static void forget(UUID uuid) {
+        states.remove(uuid);
+        lastSnapshotRequests.remove(uuid);
+        deferredSnapshotRequests.remove(uuid);
+    }
+    
+    /**
+     * Handle a client's request for a full snapshot
+     * Only one request per interval is answered right away, later ones are deferred
+     * @return true if the caller should send the snapshot now
+     */
+    public static boolean requestSnapshot(UUID uuid) {
+        long now = System.currentTimeMillis();
+        Long last = lastSnapshotRequests.get(uuid);
+        if (last != null && now - last < SNAPSHOT_REQUEST_INTERVAL_MS) {
+            deferredSnapshotRequests.add(uuid);
+            return false;
+        }
+        
+        lastSnapshotRequests.put(uuid, now);
+        deferredSnapshotRequests.remove(uuid);
+        reset(uuid);
+        return true;
+    }
+    
+    /**
+     * Answer deferred snapshot requests whose interval is over (called at the end of every server tick)
+     */
+    public static void tick(MinecraftServer server) {
+        for (UUID uuid : deferredSnapshotRequests) {
+            ServerPlayerEntity player = server.getPlayerManager().getPlayer(uuid);
+            if (player == null) {
+                deferredSnapshotRequests.remove(uuid);
+            } else if (requestSnapshot(uuid)) {
+                CommandControl.sendSyncToPlayer(player);
+            }
+        }
+    }
+    
+    private static BitSet difference(BitSet a, BitSet b) {
+        BitSet result = (BitSet) a.clone();
+        result.andNot(b);
+        return result;
+    }
+    
+    private static final class SyncState {
+        int version;
+        boolean fullAccess = false;
+        BitSet allowedIds = new BitSet();
+        BitSet hiddenIds = new BitSet();
+        
+        // Connection string table (append-only until the next snapshot)
+        final List<String> names = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+        
+        SyncState(int version) {
+            this.version = version;
+        }
+        
+        /**
+         * Map command names to table ids, appending names the client has not seen yet
+         */
+        BitSet toIds(Set<String> commands) {
+            BitSet result = new BitSet(names.size());
+            for (String command : commands) {
+                Integer id = ids.get(command);
+                if (id == null) {
+                    id = names.size();
+                    names.add(command);
+                    ids.put(command, id);
+                }
+                result.set(id);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.vincentporath.commandcontrol.network;
+
+import com.vincentporath.commandcontrol.CommandControl;
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+import com.vincentporath.commandcontrol.util.PerfMetrics;
+import net.minecraft.network.packet.s2c.play.CommandTreeS2CPacket;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Cache of filtered command tree packets per permission profile.
+ * All players of the same rank receive an identical tree, so the tree is built and
+ * encoded once per rank and the packet is shared. Players of a rank whose redirect
+ * targets differ in usability (per-player requirements) get a tree of their own.
+ * Entries are only valid for the dispatcher snapshot and policy they were built from.
+ *
+ * Trees are built on a small pool of worker threads so a join storm does not stall
+ * the server thread; finished packets are handed back to the server thread for sending.
+ */
+public class CommandTreeCache {
+    
+    private static final int WORKER_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final ExecutorService WORKERS = createWorkers();
+    
+    private static final Map<Profile, CompletableFuture<CommandTreeS2CPacket>> packets = new ConcurrentHashMap<>();
+    
+    // Latest tree request per player, so an older build never overwrites a newer tree
+    private static final Map<UUID, Integer> requestIds = new ConcurrentHashMap<>();
+    
+    // Dispatcher snapshot and policy the cached packets were built from
+    private static DispatcherSnapshot cachedSnapshot = null;
+    private static CommandPolicy cachedPolicy = null;
+    
+    private static ExecutorService createWorkers() {
+        AtomicInteger threadId = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "CommandControls Tree Builder #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(WORKER_COUNT, factory);
+    }
+    
+    /**
+     * Get the cached packet for a rank, starting a build on the worker pool if the cache has none
+     * @param snapshot the dispatcher snapshot the tree is built from
+     * @param policy the policy the tree is filtered with
+     * @param rankIndex index in the rank hierarchy, or -1 if the player has no known rank
+     * @param usableRedirects redirect targets usable by the player, see {@link DispatcherSnapshot#getUsableRedirects}
+     * @param builder builds the packet; runs on a worker thread and must not touch the world
+     */
+    public static CompletableFuture<CommandTreeS2CPacket> getOrBuild(
+            DispatcherSnapshot snapshot,
+            CommandPolicy policy,
+            int rankIndex,
+            BitSet usableRedirects,
+            Supplier<CommandTreeS2CPacket> builder
+    ) {
+        synchronized (CommandTreeCache.class) {
+            // A new dispatcher (datapack reload) or a new policy makes every entry stale
+            if (snapshot != cachedSnapshot || policy != cachedPolicy) {
+                packets.clear();
+                cachedSnapshot = snapshot;
+                cachedPolicy = policy;
+            }
+        }
+        
+        Profile profile = new Profile(rankIndex, usableRedirects);
+        CompletableFuture<CommandTreeS2CPacket> cached = packets.get(profile);
+        PerfMetrics.TREE_CACHE.record(cached != null);
+        if (cached != null) {
+            return cached;
+        }
+        
+        CompletableFuture<CommandTreeS2CPacket> future = packets.computeIfAbsent(profile,
+                key -> CompletableFuture.supplyAsync(builder, WORKERS));
+        
+        // Failed builds are not cached so the next request tries again
+        // Attached outside computeIfAbsent - an already failed build runs this inline
+        future.whenComplete((packet, error) -> {
+            if (error != null) {
+                packets.remove(profile, future);
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Send a (possibly still building) tree to a player
+     * Must be called on the server thread
+     * @param fallback sends the player a tree some other way if the build fails; runs on the server thread
+     */
+    public static void deliver(
+            ServerPlayerEntity player,
+            CompletableFuture<CommandTreeS2CPacket> future,
+            Consumer<ServerPlayerEntity> fallback
+    ) {
+        UUID uuid = player.getUuid();
+        int requestId = requestIds.merge(uuid, 1, Integer::sum);
+        
+        // Cached trees are sent right away
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            player.networkHandler.sendPacket(future.join());
+            return;
+        }
+        
+        MinecraftServer server = player.getServer();
+        future.whenComplete((packet, error) -> server.execute(() -> {
+            if (error != null) {
+                CommandControl.LOGGER.error("[CommandControls] Error building command tree", error);
+            }
+            
+            // Drop the packet if a newer tree was requested in the meantime
+            Integer latest = requestIds.get(uuid);
+            if (latest == null || latest != requestId) {
+                return;
+            }
+            
+            // Look the player up again - they may have respawned or left
+            ServerPlayerEntity current = server.getPlayerManager().getPlayer(uuid);
+            if (current == null) {
+                return;
+            }
+            if (error != null) {
+                fallback.accept(current);
+            } else {
+                current.networkHandler.sendPacket(packet);
+            }
+        }));
+    }
+    
+    /**
+     * Forget a player's pending tree requests (called on disconnect)
+     */
+    public static void forget(UUID uuid) {
+        requestIds.remove(uuid);
+    }
+    
+    /**
+     * Drop all cached trees (e.g. when commands were registered or changed at runtime)
+     */
+    public static synchronized void invalidate() {
+        packets.clear();
+        cachedSnapshot = null;
+        cachedPolicy = null;
+    }
+    
+    /**
+     * Cache key: everything a filtered tree depends on besides the snapshot and policy
+     */
+    private static final class Profile {
+        final int rankIndex;
+        final BitSet usableRedirects;
+        
+        Profile(int rankIndex, BitSet usableRedirects) {
+            this.rankIndex = rankIndex;
+            this.usableRedirects = usableRedirects;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Profile)) return false;
+            Profile other = (Profile) o;
+            return rankIndex == other.rankIndex && usableRedirects.equals(other.usableRedirects);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(rankIndex, usableRedirects);
+        }
+    }
+}
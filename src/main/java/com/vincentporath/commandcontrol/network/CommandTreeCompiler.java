@@ -0,0 +1,345 @@
+package com.vincentporath.commandcontrol.network;
+
+import com.mojang.brigadier.arguments.ArgumentType;
+import com.mojang.brigadier.tree.ArgumentCommandNode;
+import com.mojang.brigadier.tree.CommandNode;
+import com.mojang.brigadier.tree.LiteralCommandNode;
+import com.mojang.brigadier.tree.RootCommandNode;
+import com.vincentporath.commandcontrol.config.CommandPathTrie;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.argument.ArgumentTypes;
+import net.minecraft.server.command.ServerCommandSource;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Compiles the client-side copy of the command tree one root command at a time.
+ *
+ * Each root command's subtree is copied once per dispatcher (i.e. once per datapack reload)
+ * and reused by every filtered tree, so assembling a tree for a player only links in the
+ * subtrees of the roots they are allowed to use. Subtrees that redirect back to the
+ * dispatcher root (like /execute run) point at the player's own root node and are
+ * therefore still copied per tree. Root commands that are only partially allowed through
+ * sub-command path rules are pruned to their allowed paths for each tree.
+ *
+ * The compiler only reads a {@link DispatcherSnapshot}, so it can run off the server thread.
+ * Whether redirect targets are usable is decided on the server thread up front; a compiler
+ * is kept per distinct outcome of that check (normally just one).
+ */
+public class CommandTreeCompiler {
+    
+    // Compilers of the current snapshot, per set of usable redirect targets
+    private static DispatcherSnapshot currentSnapshot = null;
+    private static final Map<BitSet, CommandTreeCompiler> compilers = new HashMap<>();
+    
+    private final DispatcherSnapshot snapshot;
+    private final RootCommandNode<ServerCommandSource> dispatcherRoot;
+    private final BitSet usableRedirects;
+    
+    // Shared copies of nodes that never reach the dispatcher root
+    private final Map<CommandNode<ServerCommandSource>, CommandNode<CommandSource>> sharedNodes = new IdentityHashMap<>();
+    
+    // Compiled root commands, and whether a root command reaches the dispatcher root
+    private final Map<CommandNode<ServerCommandSource>, CompiledRoot> compiledRoots = new IdentityHashMap<>();
+    private final Map<CommandNode<ServerCommandSource>, Boolean> rootDependent = new IdentityHashMap<>();
+    
+    private CommandTreeCompiler(DispatcherSnapshot snapshot, BitSet usableRedirects) {
+        this.snapshot = snapshot;
+        this.dispatcherRoot = snapshot.getRoot();
+        this.usableRedirects = usableRedirects;
+    }
+    
+    /**
+     * Get the compiler for a dispatcher snapshot, starting a new generation if the snapshot changed
+     * @param usableRedirects redirect targets usable by the player's elevated source,
+     *                        see {@link DispatcherSnapshot#getUsableRedirects}
+     */
+    public static synchronized CommandTreeCompiler forSnapshot(DispatcherSnapshot snapshot, BitSet usableRedirects) {
+        if (snapshot != currentSnapshot) {
+            compilers.clear();
+            currentSnapshot = snapshot;
+        }
+        return compilers.computeIfAbsent(usableRedirects, key -> new CommandTreeCompiler(snapshot, key));
+    }
+    
+    /**
+     * Drop the compiled subtrees (e.g. when commands were registered at runtime)
+     */
+    public static synchronized void invalidate() {
+        compilers.clear();
+        currentSnapshot = null;
+    }
+    
+    /**
+     * Assemble a client command tree containing the allowed root commands
+     * @param isAllowed tests the lower-cased name of a root command
+     * @param pathRules path rules for a lower-cased root command that is not fully allowed, or null
+     */
+    public synchronized RootCommandNode<CommandSource> assemble(
+            Predicate<String> isAllowed,
+            Function<String, CommandPathTrie.Node> pathRules
+    ) {
+        RootCommandNode<CommandSource> resultRoot = new RootCommandNode<>();
+        
+        // Nodes copied for this tree only; falls back to the shared copies
+        Map<CommandNode<ServerCommandSource>, CommandNode<CommandSource>> localNodes = new IdentityHashMap<>();
+        localNodes.put(dispatcherRoot, resultRoot);
+        
+        for (CommandNode<ServerCommandSource> child : snapshot.getChildren(dispatcherRoot)) {
+            String name = child.getName().toLowerCase();
+            if (!isAllowed.test(name)) {
+                CommandPathTrie.Node rules = pathRules.apply(name);
+                if (rules != null) {
+                    buildPrunedTree(child, resultRoot, localNodes, rules, node -> linkRoot(resultRoot, node));
+                }
+                continue;
+            }
+            
+            if (isRootDependent(child)) {
+                buildFilteredTree(child, resultRoot, localNodes, node -> linkRoot(resultRoot, node));
+            } else {
+                CompiledRoot compiled = compileRoot(child);
+                if (compiled.node != null) {
+                    linkRoot(resultRoot, compiled.node);
+                }
+                for (CommandNode<CommandSource> extra : compiled.extraRoots) {
+                    linkRoot(resultRoot, extra);
+                }
+            }
+        }
+        
+        return resultRoot;
+    }
+    
+    private static void linkRoot(RootCommandNode<CommandSource> root, CommandNode<CommandSource> node) {
+        // Never merge into a shared node - addChild would walk (and could mutate) it
+        if (root.getChild(node.getName()) == null) {
+            root.addChild(node);
+        }
+    }
+    
+    /**
+     * Copy a root command's subtree into the shared node map (once per dispatcher)
+     */
+    private CompiledRoot compileRoot(CommandNode<ServerCommandSource> rootCommand) {
+        CompiledRoot compiled = compiledRoots.get(rootCommand);
+        if (compiled != null) {
+            return compiled;
+        }
+        
+        List<CommandNode<CommandSource>> extraRoots = new ArrayList<>();
+        RootCommandNode<CommandSource> holder = new RootCommandNode<>();
+        buildFilteredTree(rootCommand, holder, sharedNodes, extraRoots::add);
+        
+        compiled = new CompiledRoot(sharedNodes.get(rootCommand), List.copyOf(extraRoots));
+        compiledRoots.put(rootCommand, compiled);
+        return compiled;
+    }
+    
+    /**
+     * Check whether anything reachable from a root command redirects to the dispatcher root
+     */
+    private boolean isRootDependent(CommandNode<ServerCommandSource> rootCommand) {
+        Boolean cached = rootDependent.get(rootCommand);
+        if (cached != null) {
+            return cached;
+        }
+        
+        boolean dependent = false;
+        Set<CommandNode<ServerCommandSource>> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<CommandNode<ServerCommandSource>> pending = new ArrayDeque<>();
+        pending.push(rootCommand);
+        while (!pending.isEmpty() && !dependent) {
+            CommandNode<ServerCommandSource> node = pending.pop();
+            if (!visited.add(node)) {
+                continue;
+            }
+            CommandNode<ServerCommandSource> redirect = node.getRedirect();
+            if (redirect == dispatcherRoot) {
+                dependent = true;
+            } else if (redirect != null) {
+                pending.push(redirect);
+            }
+            for (CommandNode<ServerCommandSource> child : snapshot.getChildren(node)) {
+                pending.push(child);
+            }
+        }
+        
+        rootDependent.put(rootCommand, dependent);
+        return dependent;
+    }
+    
+    /**
+     * Look up the copy of a node, preferring the copies made for the current tree
+     */
+    private CommandNode<CommandSource> findCopy(
+            CommandNode<ServerCommandSource> node,
+            Map<CommandNode<ServerCommandSource>, CommandNode<CommandSource>> visitedNodes
+    ) {
+        CommandNode<CommandSource> copy = visitedNodes.get(node);
+        return copy != null ? copy : sharedNodes.get(node);
+    }
+    
+    /**
+     * Recursively build filtered command tree
+     * We skip canUse() checks entirely because:
+     * 1. We already filter at the top level via our config's isCommandAllowed()
+     * 2. Some mods (like CommandAliases) use custom predicates that fail even with elevated permissions
+     * 3. The server still validates execution permissions - this only affects what's shown in tab-complete
+     */
+    private void buildFilteredTree(
+            CommandNode<ServerCommandSource> node,
+            CommandNode<CommandSource> parent,
+            Map<CommandNode<ServerCommandSource>, CommandNode<CommandSource>> visitedNodes,
+            RootLinker rootLinker
+    ) {
+        CommandNode<CommandSource> existingNode = findCopy(node, visitedNodes);
+        if (existingNode != null) {
+            parent.addChild(existingNode);
+            return;
+        }
+        
+        // Skip canUse() entirely - we filter via our config and server validates execution anyway
+        // This fixes compatibility with mods that use custom requirement predicates (like CommandAliases)
+        
+        CommandNode<CommandSource> newNode = createNodeCopy(node, visitedNodes, rootLinker);
+        if (newNode == null) {
+            return;
+        }
+        
+        visitedNodes.put(node, newNode);
+        parent.addChild(newNode);
+        
+        // Process ALL children with elevated permissions
+        for (CommandNode<ServerCommandSource> child : snapshot.getChildren(node)) {
+            buildFilteredTree(child, newNode, visitedNodes, rootLinker);
+        }
+    }
+    
+    /**
+     * Copy a node with only the children that lie on an allowed path
+     * Copies are made for the current tree only, since they depend on the rank's rules
+     */
+    private void buildPrunedTree(
+            CommandNode<ServerCommandSource> node,
+            CommandNode<CommandSource> parent,
+            Map<CommandNode<ServerCommandSource>, CommandNode<CommandSource>> localNodes,
+            CommandPathTrie.Node rules,
+            RootLinker rootLinker
+    ) {
+        CommandNode<CommandSource> newNode = createNodeCopy(node, localNodes, rootLinker);
+        if (newNode == null) {
+            return;
+        }
+        
+        localNodes.put(node, newNode);
+        parent.addChild(newNode);
+        
+        for (CommandNode<ServerCommandSource> child : snapshot.getChildren(node)) {
+            CommandPathTrie.Node childRules = rules.child(child.getName().toLowerCase());
+            if (childRules == null) {
+                continue;
+            }
+            if (childRules.isTerminal()) {
+                // Everything below is allowed
+                buildFilteredTree(child, newNode, localNodes, rootLinker);
+            } else {
+                buildPrunedTree(child, newNode, localNodes, childRules, rootLinker);
+            }
+        }
+    }
+    
+    /**
+     * Create a CommandSource copy of a ServerCommandSource node
+     * Now properly handles redirects by ensuring redirect target is processed first
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private CommandNode<CommandSource> createNodeCopy(
+            CommandNode<ServerCommandSource> node,
+            Map<CommandNode<ServerCommandSource>, CommandNode<CommandSource>> visitedNodes,
+            RootLinker rootLinker
+    ) {
+        // Handle redirect - ensure redirect target exists FIRST
+        CommandNode<CommandSource> redirectTarget = null;
+        if (node.getRedirect() != null) {
+            redirectTarget = findCopy(node.getRedirect(), visitedNodes);
+            
+            // If redirect target doesn't exist yet, we need to process it first
+            if (redirectTarget == null) {
+                CommandNode<ServerCommandSource> redirectNode = node.getRedirect();
+                
+                // Process the redirect target (its requirement was checked on the server thread)
+                if (snapshot.isRedirectUsable(redirectNode, usableRedirects)) {
+                    CommandNode<CommandSource> newRedirectTarget = createNodeCopy(redirectNode, visitedNodes, rootLinker);
+                    if (newRedirectTarget != null) {
+                        visitedNodes.put(redirectNode, newRedirectTarget);
+                        // Add redirect target to root if it's a top-level command
+                        if (redirectNode.getClass().equals(LiteralCommandNode.class)) {
+                            rootLinker.link(newRedirectTarget);
+                        }
+                        redirectTarget = newRedirectTarget;
+                        
+                        // Also process children of the redirect target
+                        for (CommandNode<ServerCommandSource> child : snapshot.getChildren(redirectNode)) {
+                            buildFilteredTree(child, newRedirectTarget, visitedNodes, rootLinker);
+                        }
+                    }
+                }
+            }
+        }
+        
+        if (node instanceof LiteralCommandNode literal) {
+            LiteralCommandNode<CommandSource> newNode = new LiteralCommandNode<>(
+                    literal.getLiteral(),
+                    null,  // command
+                    s -> true,  // always allow
+                    redirectTarget,
+                    null,  // redirect modifier - not needed for client tree
+                    literal.isFork()
+            );
+            return newNode;
+        } else if (node instanceof ArgumentCommandNode argument) {
+            ArgumentType<?> type = argument.getType();
+            
+            // Check if argument type is serializable
+            if (ArgumentTypes.getArgumentTypeProperties(type) == null) {
+                return null;
+            }
+            
+            return new ArgumentCommandNode<>(
+                    argument.getName(),
+                    type,
+                    null,  // command
+                    s -> true,  // always allow
+                    redirectTarget,
+                    null,  // redirect modifier - not needed for client tree
+                    argument.isFork(),
+                    argument.getCustomSuggestions()
+            );
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Receives redirect targets that should also be listed as root commands
+     */
+    private interface RootLinker {
+        void link(CommandNode<CommandSource> node);
+    }
+    
+    /**
+     * A root command's shared copy plus the redirect targets it lists at the root
+     */
+    private static final class CompiledRoot {
+        final CommandNode<CommandSource> node;
+        final List<CommandNode<CommandSource>> extraRoots;
+        
+        CompiledRoot(CommandNode<CommandSource> node, List<CommandNode<CommandSource>> extraRoots) {
+            this.node = node;
+            this.extraRoots = extraRoots;
+        }
+    }
+}
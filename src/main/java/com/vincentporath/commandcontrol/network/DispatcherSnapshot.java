@@ -0,0 +1,137 @@
+package com.vincentporath.commandcontrol.network;
+
+import com.mojang.brigadier.tree.CommandNode;
+import com.mojang.brigadier.tree.RootCommandNode;
+import net.minecraft.server.command.ServerCommandSource;
+
+import java.util.*;
+
+/**
+ * Immutable view of the dispatcher's node graph for building trees off the server thread.
+ *
+ * Brigadier nodes keep their children in plain maps that mods may change at runtime, so the
+ * children of every reachable node are copied once per dispatcher on the server thread.
+ * Everything else the tree builders read from a node (name, argument type, redirect) is final.
+ * Requirements are never evaluated off-thread: the redirect targets are collected here and
+ * checked per player on the server thread, see {@link #getUsableRedirects}.
+ * Mods may register commands at runtime without replacing the root, so a snapshot is retaken
+ * whenever a cheap fingerprint of the root's children changes.
+ */
+public final class DispatcherSnapshot {
+    
+    private static DispatcherSnapshot current = null;
+    
+    private final RootCommandNode<ServerCommandSource> root;
+    private final long fingerprint;
+    
+    // Children of every node reachable from the root, in dispatcher order
+    private final Map<CommandNode<ServerCommandSource>, List<CommandNode<ServerCommandSource>>> children;
+    
+    // Distinct redirect targets (other than the root) and their index into a usable-redirects bitset
+    private final List<CommandNode<ServerCommandSource>> redirectTargets;
+    private final Map<CommandNode<ServerCommandSource>, Integer> redirectIds;
+    
+    private DispatcherSnapshot(RootCommandNode<ServerCommandSource> root, long fingerprint) {
+        this.root = root;
+        this.fingerprint = fingerprint;
+        
+        Map<CommandNode<ServerCommandSource>, List<CommandNode<ServerCommandSource>>> copied = new IdentityHashMap<>();
+        Map<CommandNode<ServerCommandSource>, Integer> ids = new IdentityHashMap<>();
+        List<CommandNode<ServerCommandSource>> targets = new ArrayList<>();
+        
+        Deque<CommandNode<ServerCommandSource>> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            CommandNode<ServerCommandSource> node = pending.pop();
+            if (copied.containsKey(node)) {
+                continue;
+            }
+            List<CommandNode<ServerCommandSource>> nodeChildren = List.copyOf(node.getChildren());
+            copied.put(node, nodeChildren);
+            
+            CommandNode<ServerCommandSource> redirect = node.getRedirect();
+            if (redirect != null && redirect != root) {
+                if (!ids.containsKey(redirect)) {
+                    ids.put(redirect, targets.size());
+                    targets.add(redirect);
+                }
+                pending.push(redirect);
+            }
+            for (CommandNode<ServerCommandSource> child : nodeChildren) {
+                pending.push(child);
+            }
+        }
+        
+        this.children = Collections.unmodifiableMap(copied);
+        this.redirectTargets = List.copyOf(targets);
+        this.redirectIds = Collections.unmodifiableMap(ids);
+    }
+    
+    /**
+     * Get the snapshot of a dispatcher, taking a new one if the dispatcher changed
+     * Must be called on the server thread
+     */
+    public static synchronized DispatcherSnapshot of(RootCommandNode<ServerCommandSource> root) {
+        long fingerprint = fingerprint(root);
+        if (current == null || current.root != root || current.fingerprint != fingerprint) {
+            current = new DispatcherSnapshot(root, fingerprint);
+        }
+        return current;
+    }
+    
+    /**
+     * Hash of the identities of the root's children and their child counts
+     * Catches commands registered late and subcommands added to an existing command,
+     * without walking the whole graph on every call
+     */
+    private static long fingerprint(RootCommandNode<ServerCommandSource> root) {
+        long hash = root.getChildren().size();
+        for (CommandNode<ServerCommandSource> child : root.getChildren()) {
+            hash = hash * 31 + System.identityHashCode(child);
+            hash = hash * 31 + child.getChildren().size();
+        }
+        return hash;
+    }
+    
+    /**
+     * Drop the snapshot (e.g. when commands were registered at runtime)
+     */
+    public static synchronized void invalidate() {
+        current = null;
+    }
+    
+    public RootCommandNode<ServerCommandSource> getRoot() {
+        return root;
+    }
+    
+    /**
+     * Get the children a node had when the snapshot was taken
+     */
+    public List<CommandNode<ServerCommandSource>> getChildren(CommandNode<ServerCommandSource> node) {
+        List<CommandNode<ServerCommandSource>> nodeChildren = children.get(node);
+        return nodeChildren != null ? nodeChildren : List.of();
+    }
+    
+    /**
+     * Check the requirement of every redirect target against a source
+     * Must be called on the server thread, since requirements may inspect the player and world
+     * @return the indices of the usable redirect targets
+     */
+    public BitSet getUsableRedirects(ServerCommandSource source) {
+        BitSet usable = new BitSet(redirectTargets.size());
+        for (int i = 0; i < redirectTargets.size(); i++) {
+            if (redirectTargets.get(i).canUse(source)) {
+                usable.set(i);
+            }
+        }
+        return usable;
+    }
+    
+    /**
+     * Check whether a redirect target was usable in the given result of {@link #getUsableRedirects}
+     */
+    public boolean isRedirectUsable(CommandNode<ServerCommandSource> target, BitSet usableRedirects) {
+        Integer id = redirectIds.get(target);
+        return id != null && usableRedirects.get(id);
+    }
+}
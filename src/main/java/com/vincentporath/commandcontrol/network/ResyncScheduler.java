@@ -0,0 +1,80 @@
+package com.vincentporath.commandcontrol.network;
+
+import com.vincentporath.commandcontrol.CommandControl;
+import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Coalescing scheduler for command resyncs (sync packet + command tree).
+ * 
+ * Resync requests can come from any thread and are deduplicated per player, so a burst
+ * of permission events for the same user results in a single resync. Pending resyncs are
+ * processed at the end of each server tick, at most a configurable number of players per
+ * tick, so a full-server resync is spread over several ticks instead of one long tick.
+ */
+public class ResyncScheduler {
+    
+    private static final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+    private static final Queue<UUID> queue = new ConcurrentLinkedQueue<>();
+    
+    /**
+     * Schedule a resync for a player (safe to call from any thread)
+     */
+    public static void schedule(UUID uuid) {
+        if (pending.add(uuid)) {
+            queue.add(uuid);
+        }
+    }
+    
+    /**
+     * Schedule a resync for every online player
+     * @return the number of online players
+     */
+    public static int scheduleAll(MinecraftServer server) {
+        var players = server.getPlayerManager().getPlayerList();
+        for (ServerPlayerEntity player : players) {
+            schedule(player.getUuid());
+        }
+        return players.size();
+    }
+    
+    /**
+     * Process pending resyncs (called at the end of every server tick)
+     */
+    public static void tick(MinecraftServer server) {
+        int budget = CommandControlConfig.getSettings().resyncPlayersPerTick;
+        int processed = 0;
+        
+        while (budget <= 0 || processed < budget) {
+            UUID uuid = queue.poll();
+            if (uuid == null) {
+                break;
+            }
+            
+            // Remove before sending so a change during the resync schedules another one
+            pending.remove(uuid);
+            
+            ServerPlayerEntity player = server.getPlayerManager().getPlayer(uuid);
+            if (player != null) {
+                CommandControl.sendSyncToPlayer(player);
+                server.getPlayerManager().sendCommandTree(player);
+                processed++;
+            }
+        }
+    }
+    
+    /**
+     * Drop all pending resyncs (called on server stop)
+     */
+    public static void clear() {
+        queue.clear();
+        pending.clear();
+    }
+}
@@ -0,0 +1,295 @@
+package com.vincentporath.commandcontrol.network;
+
+import com.mojang.brigadier.ParseResults;
+import com.mojang.brigadier.arguments.BoolArgumentType;
+import com.mojang.brigadier.arguments.DoubleArgumentType;
+import com.mojang.brigadier.arguments.FloatArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.LongArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.context.CommandContextBuilder;
+import com.mojang.brigadier.context.ParsedCommandNode;
+import com.mojang.brigadier.context.SuggestionContext;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.tree.ArgumentCommandNode;
+import com.mojang.brigadier.tree.CommandNode;
+import com.mojang.brigadier.tree.LiteralCommandNode;
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+import com.vincentporath.commandcontrol.override.CommandRequirementOverride;
+import net.minecraft.command.argument.ColorArgumentType;
+import net.minecraft.command.argument.DimensionArgumentType;
+import net.minecraft.command.argument.EntityAnchorArgumentType;
+import net.minecraft.command.argument.ItemSlotArgumentType;
+import net.minecraft.command.argument.OperationArgumentType;
+import net.minecraft.command.argument.ScoreboardSlotArgumentType;
+import net.minecraft.command.suggestion.SuggestionProviders;
+import net.minecraft.server.command.ServerCommandSource;
+
+import java.util.*;
+
+/**
+ * Cache of parse results and static suggestions per rank.
+ *
+ * Clients send a completion request on every keystroke, and each one used to parse the
+ * partial command from scratch. A parse only depends on the typed text and on which nodes
+ * are usable, so when every node the parser had to check is decided by the rank (see
+ * {@link CommandRequirementOverride.PermissionRequirement#isDecidedByRank}) the parse is
+ * shared by the rank and only bound to the requesting player's source.
+ * Suggestions themselves are shared only when every node that can follow the cursor suggests
+ * a fixed list: literals, argument types without dynamic suggestions and the providers in
+ * {@link #STATIC_PROVIDERS} (or mod providers implementing {@link StaticSuggestionProvider}).
+ * Player names, coordinates and other per-player suggestions are always computed.
+ * Entries are only valid for the dispatcher snapshot and policy they were computed with.
+ * Inputs are the partial command without the leading "/".
+ */
+public class SuggestionCache {
+    
+    private static final int ENTRIES_PER_RANK = 256;
+    
+    // Argument types whose own suggestions only depend on the typed text
+    private static final Set<Class<?>> STATIC_ARGUMENT_TYPES = Set.of(
+            BoolArgumentType.class,
+            IntegerArgumentType.class,
+            LongArgumentType.class,
+            FloatArgumentType.class,
+            DoubleArgumentType.class,
+            StringArgumentType.class,
+            ColorArgumentType.class,
+            OperationArgumentType.class,
+            ScoreboardSlotArgumentType.class,
+            ItemSlotArgumentType.class,
+            EntityAnchorArgumentType.class,
+            DimensionArgumentType.class
+    );
+    
+    // Vanilla providers that list registry or datapack contents (a datapack reload replaces the dispatcher)
+    private static final Set<SuggestionProvider<?>> STATIC_PROVIDERS = Set.of(
+            SuggestionProviders.ALL_RECIPES,
+            SuggestionProviders.AVAILABLE_SOUNDS,
+            SuggestionProviders.SUMMONABLE_ENTITIES
+    );
+    
+    private static final Map<Integer, Map<String, Entry>> entriesByRank = new HashMap<>();
+    
+    // Dispatcher snapshot and policy the cached entries were computed with
+    private static DispatcherSnapshot cachedSnapshot = null;
+    private static CommandPolicy cachedPolicy = null;
+    
+    /**
+     * Marker for suggestion providers whose suggestions only depend on the typed text,
+     * so other mods can let their completions (e.g. a fixed list of kits) be shared by a rank
+     */
+    public interface StaticSuggestionProvider<S> extends SuggestionProvider<S> {
+    }
+    
+    /**
+     * Get a cached parse bound to a source, or null if none is cached
+     */
+    public static synchronized ParseResults<ServerCommandSource> getParse(
+            DispatcherSnapshot snapshot,
+            CommandPolicy policy,
+            int rankIndex,
+            String input,
+            ServerCommandSource source
+    ) {
+        Entry entry = getEntry(snapshot, policy, rankIndex, input);
+        return entry != null ? bind(entry.parse, source) : null;
+    }
+    
+    /**
+     * Get cached suggestions for an input, or null if none are cached
+     */
+    public static synchronized Suggestions getSuggestions(DispatcherSnapshot snapshot, CommandPolicy policy, int rankIndex, String input) {
+        Entry entry = getEntry(snapshot, policy, rankIndex, input);
+        return entry != null ? entry.suggestions : null;
+    }
+    
+    /**
+     * Remember a parse if it can be shared by the rank
+     * Must be called on the server thread, since it checks node requirements
+     */
+    public static void putParse(
+            DispatcherSnapshot snapshot,
+            CommandPolicy policy,
+            int rankIndex,
+            String input,
+            ParseResults<ServerCommandSource> parse
+    ) {
+        if (!isShareable(parse, policy, rankIndex)) {
+            return;
+        }
+        
+        // Cached without a source, so the entry does not keep a player alive
+        ParseResults<ServerCommandSource> detached = bind(parse, null);
+        synchronized (SuggestionCache.class) {
+            // Computed against an older dispatcher or policy - not worth keeping
+            if (snapshot != cachedSnapshot || policy != cachedPolicy) {
+                return;
+            }
+            entriesByRank.computeIfAbsent(rankIndex, key -> createLruMap()).put(input, new Entry(detached));
+        }
+    }
+    
+    /**
+     * Remember the suggestions for an input whose parse is cached
+     * Only call this for parses {@link #isStatic} accepted
+     */
+    public static synchronized void putSuggestions(
+            DispatcherSnapshot snapshot,
+            CommandPolicy policy,
+            int rankIndex,
+            String input,
+            Suggestions suggestions
+    ) {
+        Entry entry = getEntry(snapshot, policy, rankIndex, input);
+        if (entry != null) {
+            entry.suggestions = suggestions;
+        }
+    }
+    
+    /**
+     * Check whether the suggestions for a parse are the same for everyone of the rank,
+     * i.e. the parse is shareable and every node that can follow the cursor suggests a fixed list
+     * Must be called on the server thread, since it checks node requirements
+     */
+    public static boolean isStatic(ParseResults<ServerCommandSource> parse, CommandPolicy policy, int rankIndex) {
+        if (!isShareable(parse, policy, rankIndex)) {
+            return false;
+        }
+        
+        SuggestionContext<ServerCommandSource> context;
+        try {
+            context = parse.getContext().findSuggestionContext(parse.getReader().getTotalLength());
+        } catch (IllegalStateException e) {
+            return false;
+        }
+        
+        Collection<CommandNode<ServerCommandSource>> children = context.parent.getChildren();
+        if (children.isEmpty()) {
+            return false;
+        }
+        for (CommandNode<ServerCommandSource> child : children) {
+            if (!hasStaticSuggestions(child) || !isDecidedByRank(child, policy, rankIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Drop all cached entries (e.g. when commands were registered or changed at runtime)
+     */
+    public static synchronized void invalidate() {
+        entriesByRank.clear();
+        cachedSnapshot = null;
+        cachedPolicy = null;
+    }
+    
+    private static Entry getEntry(DispatcherSnapshot snapshot, CommandPolicy policy, int rankIndex, String input) {
+        if (snapshot != cachedSnapshot || policy != cachedPolicy) {
+            entriesByRank.clear();
+            cachedSnapshot = snapshot;
+            cachedPolicy = policy;
+            return null;
+        }
+        
+        Map<String, Entry> entries = entriesByRank.get(rankIndex);
+        return entries != null ? entries.get(input) : null;
+    }
+    
+    /**
+     * Check whether every requirement the parser tested is decided by the rank, so another
+     * player of the rank would get the same parse
+     * The parser tries the literal matching the next word, or every argument if none matches;
+     * where parsing stopped, any child may have been tried.
+     */
+    private static boolean isShareable(ParseResults<ServerCommandSource> parse, CommandPolicy policy, int rankIndex) {
+        CommandContextBuilder<ServerCommandSource> context = parse.getContext();
+        
+        // Redirects (e.g. /execute) continue in child contexts with sources of their own
+        if (context.getChild() != null) {
+            return false;
+        }
+        
+        CommandNode<ServerCommandSource> parent = context.getRootNode();
+        for (ParsedCommandNode<ServerCommandSource> parsed : context.getNodes()) {
+            CommandNode<ServerCommandSource> node = parsed.getNode();
+            if (!isDecidedByRank(node, policy, rankIndex)) {
+                return false;
+            }
+            if (!(node instanceof LiteralCommandNode)) {
+                for (CommandNode<ServerCommandSource> sibling : parent.getChildren()) {
+                    if (!(sibling instanceof LiteralCommandNode) && !isDecidedByRank(sibling, policy, rankIndex)) {
+                        return false;
+                    }
+                }
+            }
+            parent = node;
+        }
+        
+        for (CommandNode<ServerCommandSource> child : parent.getChildren()) {
+            if (!isDecidedByRank(child, policy, rankIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Whether a node's requirement gives the same answer for every player of the rank
+     * Only our wrapped requirement is known to be - anything else may check the player
+     */
+    private static boolean isDecidedByRank(CommandNode<ServerCommandSource> node, CommandPolicy policy, int rankIndex) {
+        return node.getRequirement() instanceof CommandRequirementOverride.PermissionRequirement requirement
+                && requirement.isDecidedByRank(policy, rankIndex);
+    }
+    
+    /**
+     * Whether a node suggests a fixed list for the same input
+     */
+    private static boolean hasStaticSuggestions(CommandNode<ServerCommandSource> node) {
+        // Subclasses could suggest anything
+        if (node.getClass() == LiteralCommandNode.class) {
+            return true;
+        }
+        if (node.getClass() != ArgumentCommandNode.class) {
+            return false;
+        }
+        
+        ArgumentCommandNode<ServerCommandSource, ?> argument = (ArgumentCommandNode<ServerCommandSource, ?>) node;
+        SuggestionProvider<ServerCommandSource> provider = argument.getCustomSuggestions();
+        if (provider == null) {
+            return STATIC_ARGUMENT_TYPES.contains(argument.getType().getClass());
+        }
+        return provider instanceof StaticSuggestionProvider || STATIC_PROVIDERS.contains(provider);
+    }
+    
+    /**
+     * Copy a parse with another source (the nodes, arguments and reader are shared)
+     */
+    private static ParseResults<ServerCommandSource> bind(ParseResults<ServerCommandSource> parse, ServerCommandSource source) {
+        return new ParseResults<>(parse.getContext().copy().withSource(source), parse.getReader(), parse.getExceptions());
+    }
+    
+    private static Map<String, Entry> createLruMap() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ENTRIES_PER_RANK;
+            }
+        };
+    }
+    
+    /**
+     * Parse of one input, and its suggestions once they are known to be static
+     */
+    private static final class Entry {
+        final ParseResults<ServerCommandSource> parse;
+        Suggestions suggestions = null;
+        
+        Entry(ParseResults<ServerCommandSource> parse) {
+            this.parse = parse;
+        }
+    }
+}
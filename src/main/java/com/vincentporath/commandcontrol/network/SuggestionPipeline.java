@@ -0,0 +1,230 @@
+package com.vincentporath.commandcontrol.network;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.ParseResults;
+import com.mojang.brigadier.StringReader;
+import com.mojang.brigadier.context.StringRange;
+import com.mojang.brigadier.suggestion.Suggestion;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+import com.vincentporath.commandcontrol.util.PerfMetrics;
+import net.minecraft.network.packet.s2c.play.CommandSuggestionsS2CPacket;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-player pipeline for elevated command suggestions.
+ *
+ * Clients send a completion request on every keystroke, but only the answer to the latest
+ * one is ever shown. Each player therefore has at most one suggestion computation in flight:
+ * a newer request cancels the previous one, responses for superseded requests are dropped,
+ * and requests over the per-second budget are parked (only the newest is kept) until a
+ * later tick has budget left.
+ * Requests are submitted and processed on the server thread (the mixin injects after vanilla
+ * has moved the packet to it), so the pipeline state needs no locking. Only completion
+ * callbacks may run elsewhere, and they only read the latest request id.
+ */
+public class SuggestionPipeline {
+    
+    private static final long WINDOW_MS = 1000;
+    
+    private static final Map<UUID, PlayerPipeline> pipelines = new ConcurrentHashMap<>();
+    
+    /**
+     * Handle a completion request with elevated permissions
+     * @param command the partial command as sent by the client
+     */
+    public static void submit(ServerPlayerEntity player, int completionId, String command, CommandPolicy policy, int rankIndex) {
+        PlayerPipeline pipeline = pipelines.computeIfAbsent(player.getUuid(), uuid -> new PlayerPipeline());
+        pipeline.latestId = completionId;
+        pipeline.cancelPending();
+        
+        Request request = new Request(completionId, command, policy, rankIndex);
+        if (pipeline.tryAcquire(System.currentTimeMillis())) {
+            pipeline.parked = null;
+            run(player, pipeline, request);
+        } else {
+            pipeline.parked = request;
+        }
+    }
+    
+    /**
+     * Note a request that is answered by vanilla, so older elevated requests are dropped
+     */
+    public static void supersede(UUID uuid, int completionId) {
+        PlayerPipeline pipeline = pipelines.get(uuid);
+        if (pipeline != null) {
+            pipeline.latestId = completionId;
+            pipeline.parked = null;
+            pipeline.cancelPending();
+        }
+    }
+    
+    /**
+     * Run parked requests that fit into the budget again (called at the end of every server tick)
+     */
+    public static void tick(MinecraftServer server) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<UUID, PlayerPipeline> entry : pipelines.entrySet()) {
+            PlayerPipeline pipeline = entry.getValue();
+            Request request = pipeline.parked;
+            if (request == null || !pipeline.tryAcquire(now)) {
+                continue;
+            }
+            
+            pipeline.parked = null;
+            ServerPlayerEntity player = server.getPlayerManager().getPlayer(entry.getKey());
+            if (player != null) {
+                run(player, pipeline, request);
+            }
+        }
+    }
+    
+    /**
+     * Forget a player's pipeline (called on disconnect)
+     */
+    public static void forget(UUID uuid) {
+        PlayerPipeline pipeline = pipelines.remove(uuid);
+        if (pipeline != null) {
+            pipeline.cancelPending();
+        }
+    }
+    
+    /**
+     * Drop all pipelines (called on server stop)
+     */
+    public static void clear() {
+        for (PlayerPipeline pipeline : pipelines.values()) {
+            pipeline.cancelPending();
+        }
+        pipelines.clear();
+    }
+    
+    private static void run(ServerPlayerEntity player, PlayerPipeline pipeline, Request request) {
+        CommandDispatcher<ServerCommandSource> dispatcher = player.getServer().getCommandManager().getDispatcher();
+        long start = PerfMetrics.start();
+        
+        // Retaken when commands were registered at runtime, which makes the cached entries stale
+        DispatcherSnapshot snapshot = DispatcherSnapshot.of(dispatcher.getRoot());
+        
+        // Parse without the leading "/" so "/warp " and "warp " share entries; ranges are moved back for the client
+        String input = request.command.startsWith("/") ? request.command.substring(1) : request.command;
+        int offset = request.command.length() - input.length();
+        
+        // Suggestions that are a fixed list are shared by everyone with the same rank
+        Suggestions cached = SuggestionCache.getSuggestions(snapshot, request.policy, request.rankIndex, input);
+        PerfMetrics.SUGGESTION_CACHE.record(cached != null);
+        if (cached != null) {
+            player.networkHandler.sendPacket(new CommandSuggestionsS2CPacket(request.completionId, shift(cached, offset)));
+            PerfMetrics.SUGGESTION.recordSince(start);
+            return;
+        }
+        
+        // Create elevated source
+        ServerCommandSource elevatedSource = player.getCommandSource().withLevel(4);
+        
+        // Parse with elevated source, or reuse the rank's parse of the same input
+        ParseResults<ServerCommandSource> parseResults = SuggestionCache.getParse(snapshot, request.policy, request.rankIndex, input, elevatedSource);
+        PerfMetrics.PARSE_CACHE.record(parseResults != null);
+        if (parseResults == null) {
+            parseResults = dispatcher.parse(new StringReader(input), elevatedSource);
+            SuggestionCache.putParse(snapshot, request.policy, request.rankIndex, input, parseResults);
+        }
+        boolean cacheable = SuggestionCache.isStatic(parseResults, request.policy, request.rankIndex);
+        
+        // Get suggestions
+        CompletableFuture<Suggestions> future = dispatcher.getCompletionSuggestions(parseResults);
+        pipeline.pending = future;
+        
+        future.thenAccept(suggestions -> {
+            PerfMetrics.SUGGESTION.recordSince(start);
+            if (cacheable) {
+                SuggestionCache.putSuggestions(snapshot, request.policy, request.rankIndex, input, suggestions);
+            }
+            
+            // Drop the response if the player has typed on in the meantime
+            if (pipeline.latestId == request.completionId) {
+                player.networkHandler.sendPacket(new CommandSuggestionsS2CPacket(request.completionId, shift(suggestions, offset)));
+            }
+        });
+    }
+    
+    /**
+     * Move suggestion ranges by an offset (ranges are positions in the parsed input)
+     */
+    private static Suggestions shift(Suggestions suggestions, int offset) {
+        if (offset == 0) {
+            return suggestions;
+        }
+        
+        List<Suggestion> shifted = new ArrayList<>(suggestions.getList().size());
+        for (Suggestion suggestion : suggestions.getList()) {
+            shifted.add(new Suggestion(shift(suggestion.getRange(), offset), suggestion.getText(), suggestion.getTooltip()));
+        }
+        return new Suggestions(shift(suggestions.getRange(), offset), shifted);
+    }
+    
+    private static StringRange shift(StringRange range, int offset) {
+        return new StringRange(range.getStart() + offset, range.getEnd() + offset);
+    }
+    
+    private static final class Request {
+        final int completionId;
+        final String command;
+        final CommandPolicy policy;
+        final int rankIndex;
+        
+        Request(int completionId, String command, CommandPolicy policy, int rankIndex) {
+            this.completionId = completionId;
+            this.command = command;
+            this.policy = policy;
+            this.rankIndex = rankIndex;
+        }
+    }
+    
+    private static final class PlayerPipeline {
+        // Read by completion callbacks on other threads
+        volatile int latestId;
+        
+        // Server thread only
+        CompletableFuture<Suggestions> pending = null;
+        Request parked = null;
+        
+        // Fixed one-second window
+        long windowStart = 0;
+        int requestsInWindow = 0;
+        
+        boolean tryAcquire(long now) {
+            int budget = CommandControlConfig.getSettings().suggestionRequestsPerSecond;
+            if (budget <= 0) {
+                return true;
+            }
+            
+            if (now - windowStart >= WINDOW_MS) {
+                windowStart = now;
+                requestsInWindow = 0;
+            }
+            if (requestsInWindow >= budget) {
+                return false;
+            }
+            requestsInWindow++;
+            return true;
+        }
+        
+        void cancelPending() {
+            if (pending != null && !pending.isDone()) {
+                pending.cancel(false);
+            }
+            pending = null;
+        }
+    }
+}
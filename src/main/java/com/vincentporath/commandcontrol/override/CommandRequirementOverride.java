@@ -1,42 +1,59 @@
 package com.vincentporath.commandcontrol.override;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.tree.CommandNode;
 import com.mojang.brigadier.tree.RootCommandNode;
 import com.vincentporath.commandcontrol.CommandControl;
 import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+import com.vincentporath.commandcontrol.util.CommandExecutionTracker;
+import com.vincentporath.commandcontrol.util.OpStatusTracker;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.function.Predicate;
 
 /**
- * Overrides command requirements using reflection to allow non-OP players
+ * Overrides command requirements to allow non-OP players
  * to use commands based on their LuckPerms rank.
  * 
+ * Every node's requirement is wrapped exactly once with a {@link PermissionRequirement}
+ * tagged with its path of node names (root command first), so re-applying after a datapack
+ * reload is a no-op for nodes that are already wrapped. The decision for each rank is worked
+ * out once per node and policy, so each check during parsing is an array read.
+ * 
  * Inspired by Player Roles mod's approach:
  * https://github.com/NucleoidMC/player-roles
  */
 public class CommandRequirementOverride {
     
-    private static Field requirementField;
+    private static MethodHandle requirementGetter;
+    private static MethodHandle requirementSetter;
     private static boolean initialized = false;
     
     /**
-     * Initialize reflection - get access to the requirement field
+     * Initialize method handles for the requirement field
      */
     public static boolean initialize() {
         if (initialized) return true;
         
         try {
-            requirementField = CommandNode.class.getDeclaredField("requirement");
+            // The field is final, so the setter has to be unreflected from an accessible Field
+            Field requirementField = CommandNode.class.getDeclaredField("requirement");
             requirementField.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            requirementGetter = lookup.unreflectGetter(requirementField);
+            requirementSetter = lookup.unreflectSetter(requirementField);
             initialized = true;
-            CommandControl.LOGGER.info("[CommandControls] Reflection initialized successfully");
+            CommandControl.LOGGER.info("[CommandControls] Requirement handles initialized successfully");
             return true;
-        } catch (NoSuchFieldException e) {
-            CommandControl.LOGGER.error("[CommandControls] Failed to find 'requirement' field in CommandNode", e);
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            CommandControl.LOGGER.error("[CommandControls] Failed to access 'requirement' field in CommandNode", e);
             return false;
         }
     }
@@ -46,7 +63,7 @@ public class CommandRequirementOverride {
      */
     public static void applyOverrides(CommandDispatcher<ServerCommandSource> dispatcher) {
         if (!initialize()) {
-            CommandControl.LOGGER.error("[CommandControls] Cannot apply overrides - reflection not initialized");
+            CommandControl.LOGGER.error("[CommandControls] Cannot apply overrides - requirement handles not initialized");
             return;
         }
         
@@ -54,7 +71,7 @@ public class CommandRequirementOverride {
         int overrideCount = 0;
         
         for (CommandNode<ServerCommandSource> child : root.getChildren()) {
-            if (overrideCommandNode(child, child.getName())) {
+            if (overrideCommandNode(child, new String[] {child.getName().toLowerCase()})) {
                 overrideCount++;
             }
         }
@@ -63,50 +80,138 @@ public class CommandRequirementOverride {
     }
     
     /**
-     * Override a single command node's requirement
+     * Wrap the requirement of a node and all of its children
+     * @return true if the node was wrapped now, false if it already was or wrapping failed
      */
     @SuppressWarnings("unchecked")
-    private static boolean overrideCommandNode(CommandNode<ServerCommandSource> node, String commandPath) {
+    private static boolean overrideCommandNode(CommandNode<ServerCommandSource> node, String[] path) {
         try {
-            // Get the original requirement
             Predicate<ServerCommandSource> originalRequirement = 
-                    (Predicate<ServerCommandSource>) requirementField.get(node);
-            
-            String commandName = commandPath.split(" ")[0].toLowerCase();
+                    (Predicate<ServerCommandSource>) requirementGetter.invoke(node);
             
-            // Create new requirement that checks our config first
-            Predicate<ServerCommandSource> newRequirement = source -> {
-                // Check if this is a player
-                if (source.getEntity() instanceof ServerPlayerEntity player) {
-                    // If player is already OP level 4, use original check
-                    if (source.hasPermissionLevel(4)) {
-                        return originalRequirement.test(source);
-                    }
-                    
-                    // Check if command is allowed for this player via our config
-                    if (CommandControlConfig.isCommandAllowed(player, commandName)) {
-                        // Command is allowed - return true regardless of original requirement
-                        return true;
-                    }
-                }
-                
-                // Fall back to original requirement
-                return originalRequirement.test(source);
-            };
+            // Already wrapped by an earlier pass - never wrap twice
+            if (originalRequirement instanceof PermissionRequirement) {
+                return false;
+            }
             
-            // Set the new requirement
-            requirementField.set(node, newRequirement);
+            requirementSetter.invoke(node, new PermissionRequirement(originalRequirement, path));
             
             // Recursively apply to children (for subcommands)
             for (CommandNode<ServerCommandSource> child : node.getChildren()) {
-                overrideCommandNode(child, commandPath + " " + child.getName());
+                String[] childPath = Arrays.copyOf(path, path.length + 1);
+                childPath[path.length] = child.getName().toLowerCase();
+                overrideCommandNode(child, childPath);
             }
             
             return true;
             
-        } catch (IllegalAccessException e) {
-            CommandControl.LOGGER.error("[CommandControls] Failed to override requirement for {}", commandPath, e);
+        } catch (Throwable e) {
+            CommandControl.LOGGER.error("[CommandControls] Failed to override requirement for {}", String.join(".", path), e);
             return false;
         }
     }
+    
+    /**
+     * Requirement that grants access when the node's path is allowed by our config,
+     * denies it when the root command is only partially allowed and the path is not part of it,
+     * and otherwise falls back to the original requirement
+     */
+    public static final class PermissionRequirement implements Predicate<ServerCommandSource> {
+        
+        // The requirement Brigadier gives nodes that never call requires() (always true)
+        private static final Predicate<ServerCommandSource> DEFAULT_REQUIREMENT =
+                LiteralArgumentBuilder.<ServerCommandSource>literal("").getRequirement();
+        
+        private final Predicate<ServerCommandSource> originalRequirement;
+        private final String[] path;
+        
+        // Decisions per rank resolved against a specific policy, refreshed when a new policy is published
+        private volatile Binding binding = null;
+        
+        PermissionRequirement(Predicate<ServerCommandSource> originalRequirement, String[] path) {
+            this.originalRequirement = originalRequirement;
+            this.path = path;
+        }
+        
+        @Override
+        public boolean test(ServerCommandSource source) {
+            // Check if this is a player
+            if (source.getEntity() instanceof ServerPlayerEntity player) {
+                // If player is really OP level 4, use original check
+                // (the source's level may be raised by us while a command runs)
+                if (OpStatusTracker.isOperator(player.getUuid())) {
+                    return originalRequirement.test(source);
+                }
+                
+                switch (decide(player)) {
+                    case ALLOW:
+                        // Path is allowed - return true regardless of original requirement
+                        CommandExecutionTracker.noteGrant(() -> originalRequirement.test(source));
+                        return true;
+                    case DENY:
+                        return false;
+                    default:
+                        break;
+                }
+            }
+            
+            // Fall back to original requirement
+            return originalRequirement.test(source);
+        }
+        
+        private CommandPolicy.PathDecision decide(ServerPlayerEntity player) {
+            CommandPolicy policy = CommandControlConfig.getPolicy();
+            return bind(policy).decide(CommandControlConfig.getPlayerRankIndex(policy, player));
+        }
+        
+        /**
+         * Check whether the outcome for a player without OP only depends on their rank,
+         * i.e. the config decides the path or the command has no requirement of its own
+         */
+        public boolean isDecidedByRank(CommandPolicy policy, int rankIndex) {
+            return bind(policy).decide(rankIndex) != CommandPolicy.PathDecision.DEFAULT
+                    || originalRequirement == DEFAULT_REQUIREMENT;
+        }
+        
+        private Binding bind(CommandPolicy policy) {
+            Binding current = binding;
+            if (current == null || current.policy != policy) {
+                current = new Binding(policy, path);
+                binding = current;
+            }
+            return current;
+        }
+        
+        public String getCommandName() {
+            return path[0];
+        }
+        
+        public String[] getPath() {
+            return path.clone();
+        }
+        
+        public Predicate<ServerCommandSource> getOriginalRequirement() {
+            return originalRequirement;
+        }
+    }
+    
+    private static final class Binding {
+        final CommandPolicy policy;
+        
+        // Index 0 holds the decision for a player without a known rank
+        final CommandPolicy.PathDecision[] decisionsByRank;
+        
+        Binding(CommandPolicy policy, String[] path) {
+            this.policy = policy;
+            int rankCount = policy.getRankHierarchy().size();
+            this.decisionsByRank = new CommandPolicy.PathDecision[rankCount + 1];
+            for (int rankIndex = -1; rankIndex < rankCount; rankIndex++) {
+                decisionsByRank[rankIndex + 1] = policy.checkPath(rankIndex, path);
+            }
+        }
+        
+        CommandPolicy.PathDecision decide(int rankIndex) {
+            return decisionsByRank[Math.max(Math.min(rankIndex, decisionsByRank.length - 2) + 1, 0)];
+        }
+    }
 }
@@ -0,0 +1,269 @@
+package com.vincentporath.commandcontrol.util;
+
+import com.vincentporath.commandcontrol.CommandControl;
+import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.config.CommandControlSettings;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audit log of denied commands and commands run with permissions granted by the mod.
+ *
+ * Recording an event only claims a slot in a bounded lock-free ring buffer; a background
+ * writer drains the buffer in batches into config/commandcontrols/audit/audit.log as JSON
+ * lines, rotating the file by size. If the writer falls behind, new events are dropped
+ * (and counted) rather than slowing down command execution.
+ */
+public class AuditLog {
+    
+    public enum Decision {
+        DENIED,
+        ELEVATED
+    }
+    
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    private static final int BATCH_SIZE = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final int MAX_COMMAND_LENGTH = 256;
+    
+    // Multi-producer, single-consumer ring: producers claim a sequence with CAS on tail
+    // and publish the event into its slot; the writer clears slots behind head
+    private static final AtomicReferenceArray<Event> slots = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong();
+    private static volatile long head = 0;
+    
+    private static final LongAdder dropped = new LongAdder();
+    
+    private static volatile boolean enabled = false;
+    private static volatile long maxFileBytes;
+    private static volatile int maxFiles;
+    private static Thread writerThread = null;
+    private static volatile boolean running = false;
+    
+    private static final class Event {
+        final long timestamp;
+        final UUID player;
+        final String playerName;
+        final String command;
+        final Decision decision;
+        final String rank;
+        
+        Event(long timestamp, UUID player, String playerName, String command, Decision decision, String rank) {
+            this.timestamp = timestamp;
+            this.player = player;
+            this.playerName = playerName;
+            this.command = command;
+            this.decision = decision;
+            this.rank = rank;
+        }
+    }
+    
+    /**
+     * Record a command decision; never blocks
+     * @param rank the player's rank, or null if they have no known rank
+     */
+    public static void record(UUID player, String playerName, String command, Decision decision, String rank) {
+        if (!enabled) {
+            return;
+        }
+        
+        if (command.length() > MAX_COMMAND_LENGTH) {
+            command = command.substring(0, MAX_COMMAND_LENGTH);
+        }
+        Event event = new Event(System.currentTimeMillis(), player, playerName, command, decision, rank);
+        
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.set((int) (sequence & MASK), event);
+    }
+    
+    /**
+     * Enable or disable the log to match the settings (server start and config reloads)
+     */
+    public static synchronized void configure(CommandControlSettings settings) {
+        maxFileBytes = Math.max(1, settings.auditMaxFileSizeMb) * 1024L * 1024L;
+        maxFiles = Math.max(1, settings.auditMaxFiles);
+        enabled = settings.auditLog;
+        
+        if (enabled && writerThread == null) {
+            running = true;
+            writerThread = new Thread(AuditLog::run, "CommandControls Audit Writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        } else if (!enabled) {
+            stop();
+        }
+    }
+    
+    /**
+     * Stop recording, write out what is buffered and stop the writer (called on server stop)
+     */
+    public static synchronized void stop() {
+        enabled = false;
+        Thread thread = writerThread;
+        if (thread == null) {
+            return;
+        }
+        
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+    }
+    
+    private static Path getLogPath() {
+        return CommandControlConfig.getConfigPath().resolveSibling("audit").resolve("audit.log");
+    }
+    
+    private static void run() {
+        Path path = getLogPath();
+        List<Event> batch = new ArrayList<>(BATCH_SIZE);
+        BufferedWriter writer = null;
+        
+        try {
+            Files.createDirectories(path.getParent());
+            while (true) {
+                boolean stopping = !running;
+                drain(batch);
+                
+                if (!batch.isEmpty()) {
+                    if (writer == null) {
+                        writer = open(path);
+                    }
+                    for (Event event : batch) {
+                        writeEvent(writer, event);
+                    }
+                    writer.flush();
+                    batch.clear();
+                    
+                    if (Files.size(path) >= maxFileBytes) {
+                        writer.close();
+                        writer = null;
+                        rotate(path);
+                    }
+                    continue;
+                }
+                
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        } catch (IOException e) {
+            CommandControl.LOGGER.error("[CommandControls] Audit log writer failed - audit logging stopped", e);
+            enabled = false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Closing anyway
+                }
+            }
+        }
+        
+        long lost = dropped.sumThenReset();
+        if (lost > 0) {
+            CommandControl.LOGGER.warn("[CommandControls] {} audit events were dropped because the writer fell behind", lost);
+        }
+    }
+    
+    /**
+     * Move up to one batch of published events from the ring into the list
+     */
+    private static void drain(List<Event> batch) {
+        long sequence = head;
+        while (batch.size() < BATCH_SIZE && sequence < tail.get()) {
+            int slot = (int) (sequence & MASK);
+            Event event = slots.get(slot);
+            if (event == null) {
+                // Claimed but not published yet
+                break;
+            }
+            slots.set(slot, null);
+            batch.add(event);
+            sequence++;
+        }
+        head = sequence;
+    }
+    
+    private static BufferedWriter open(Path path) throws IOException {
+        return Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+    }
+    
+    /**
+     * audit.log -> audit.1.log -> audit.2.log ..., dropping the oldest
+     */
+    private static void rotate(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        String base = name.substring(0, name.lastIndexOf('.'));
+        Files.deleteIfExists(path.resolveSibling(base + "." + maxFiles + ".log"));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path source = path.resolveSibling(base + "." + i + ".log");
+            if (Files.exists(source)) {
+                Files.move(source, path.resolveSibling(base + "." + (i + 1) + ".log"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(path, path.resolveSibling(base + ".1.log"), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private static void writeEvent(BufferedWriter writer, Event event) throws IOException {
+        StringBuilder line = new StringBuilder(128 + event.command.length());
+        line.append("{\"time\":").append(event.timestamp);
+        line.append(",\"uuid\":\"").append(event.player).append('"');
+        line.append(",\"player\":");
+        appendString(line, event.playerName);
+        line.append(",\"command\":");
+        appendString(line, event.command);
+        line.append(",\"decision\":\"").append(event.decision.name().toLowerCase()).append('"');
+        line.append(",\"rank\":");
+        appendString(line, event.rank);
+        line.append("}\n");
+        writer.write(line.toString());
+    }
+    
+    private static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -1,47 +1,161 @@
 package com.vincentporath.commandcontrol.util;
 
+import com.vincentporath.commandcontrol.config.CommandPolicy;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
 /**
- * Thread-local tracker for the current command being executed
+ * Tracker for the commands currently being executed
  * This allows the permission mixin to know which command is being checked
+ *
+ * Each execution pushes a context with the permission decision already made, so permission
+ * checks during the command are a field read. Commands run by other commands (functions,
+ * /execute run) push their own context on top.
+ *
+ * Nearly all commands run on the server thread, whose contexts live on a plain stack.
+ * Commands that mods execute on other threads (chat bridges, async schedulers) get a stack
+ * of their own per thread, so they never see or disturb the server thread's contexts.
  */
 public class CommandExecutionTracker {
     
-    private static final ThreadLocal<String> currentCommand = new ThreadLocal<>();
-    private static final ThreadLocal<Boolean> elevated = ThreadLocal.withInitial(() -> false);
+    // Stack of the server thread, only ever touched by that thread
+    private static final Deque<ExecutionContext> serverContexts = new ArrayDeque<>();
+    private static volatile Thread serverThread = null;
+    
+    // Stacks of every other thread that executes commands
+    private static final ThreadLocal<Deque<ExecutionContext>> otherContexts = new ThreadLocal<>();
     
     /**
-     * Set the current command being executed
+     * Permission context of one command execution
      */
-    public static void setCurrentCommand(String command) {
-        currentCommand.set(command);
+    public static final class ExecutionContext {
+        // Context for executions we don't elevate (console, OP, disallowed commands)
+        public static final ExecutionContext NONE = new ExecutionContext(null, "", null, -1, -1, false);
+        
+        public final UUID playerUuid;
+        public final String rootCommand;
+        public final CommandPolicy policy;
+        public final int commandId;
+        public final int rankIndex;
+        public final boolean allowed;
+        
+        // Set once the command needed one of our grants (only touched by the executing thread)
+        private boolean elevated = false;
+        
+        public ExecutionContext(UUID playerUuid, String rootCommand, CommandPolicy policy, int commandId, int rankIndex, boolean allowed) {
+            this.playerUuid = playerUuid;
+            this.rootCommand = rootCommand;
+            this.policy = policy;
+            this.commandId = commandId;
+            this.rankIndex = rankIndex;
+            this.allowed = allowed;
+        }
+        
+        /**
+         * Note that a check passed only because of the mod
+         */
+        public void markElevated() {
+            if (this != NONE) {
+                elevated = true;
+            }
+        }
+        
+        /**
+         * Whether the command needed the mod to get past a permission check
+         */
+        public boolean isElevated() {
+            return elevated;
+        }
     }
     
     /**
-     * Get the current command being executed
+     * Set the server thread (called on server start, from that thread)
      */
-    public static String getCurrentCommand() {
-        return currentCommand.get();
+    public static void bindServerThread(Thread thread) {
+        serverContexts.clear();
+        serverThread = thread;
     }
     
     /**
-     * Clear the current command (call after execution)
+     * Get the stack of the current thread
+     * @param create whether to create the stack of a non-server thread if it has none (otherwise null)
      */
-    public static void clearCurrentCommand() {
-        currentCommand.remove();
+    private static Deque<ExecutionContext> stack(boolean create) {
+        if (Thread.currentThread() == serverThread) {
+            return serverContexts;
+        }
+        Deque<ExecutionContext> contexts = otherContexts.get();
+        if (contexts == null && create) {
+            contexts = new ArrayDeque<>();
+            otherContexts.set(contexts);
+        }
+        return contexts;
     }
     
     /**
-     * Set whether we're currently in an elevated execution context
-     * (to prevent infinite recursion)
+     * Enter a command execution (call before execution)
      */
-    public static void setElevated(boolean value) {
-        elevated.set(value);
+    public static void push(ExecutionContext context) {
+        stack(true).push(context);
     }
     
     /**
-     * Check if we're in an elevated execution context
+     * Leave the innermost command execution (call after execution)
+     * @return the context that was left, or null if none
      */
-    public static boolean isElevated() {
-        return elevated.get();
+    public static ExecutionContext pop() {
+        Deque<ExecutionContext> contexts = stack(false);
+        if (contexts == null || contexts.isEmpty()) {
+            return null;
+        }
+        ExecutionContext context = contexts.pop();
+        if (contexts.isEmpty() && contexts != serverContexts) {
+            // Don't keep a stack alive for every pool thread that ever ran a command
+            otherContexts.remove();
+        }
+        return context;
+    }
+    
+    /**
+     * Mark the current execution as elevated if a check we are about to pass for it
+     * would fail without our grants (e.g. a requirement the config allows)
+     * @param check the check as vanilla would run it
+     */
+    public static void noteGrant(BooleanSupplier check) {
+        ExecutionContext context = current();
+        if (context == null || !context.allowed || context.isElevated()) {
+            return;
+        }
+        
+        // Run the check without our grants
+        push(ExecutionContext.NONE);
+        boolean passes;
+        try {
+            passes = check.getAsBoolean();
+        } finally {
+            pop();
+        }
+        if (!passes) {
+            context.markElevated();
+        }
+    }
+    
+    /**
+     * Get the context of the innermost command being executed, or null if none
+     */
+    public static ExecutionContext current() {
+        Deque<ExecutionContext> contexts = stack(false);
+        return contexts != null ? contexts.peek() : null;
+    }
+    
+    /**
+     * Get the current command being executed
+     */
+    public static String getCurrentCommand() {
+        ExecutionContext context = current();
+        return context != null && context.allowed ? context.rootCommand : null;
     }
 }
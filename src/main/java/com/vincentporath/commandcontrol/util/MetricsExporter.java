@@ -0,0 +1,164 @@
+package com.vincentporath.commandcontrol.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.vincentporath.commandcontrol.CommandControl;
+import com.vincentporath.commandcontrol.config.CommandControlSettings;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Optional Prometheus / OpenMetrics text endpoint for the {@link PerfMetrics} counters.
+ *
+ * Disabled unless "metrics_port" is set. Scrapes are answered on a dedicated daemon thread
+ * and only read the lock-free counters, so they never touch or wait for the server thread.
+ */
+public class MetricsExporter {
+    
+    private static final String PREFIX = "commandcontrols_";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    
+    private static HttpServer server = null;
+    private static ExecutorService executor = null;
+    private static int boundPort = 0;
+    private static String boundAddress = null;
+    
+    /**
+     * Start, restart or stop the endpoint to match the settings (server start and config reloads)
+     */
+    public static synchronized void configure(CommandControlSettings settings) {
+        if (settings.metricsPort == boundPort && settings.metricsBindAddress.equals(boundAddress)) {
+            return;
+        }
+        
+        stop();
+        if (settings.metricsPort <= 0) {
+            return;
+        }
+        
+        try {
+            server = HttpServer.create(new InetSocketAddress(settings.metricsBindAddress, settings.metricsPort), 0);
+        } catch (IOException e) {
+            CommandControl.LOGGER.warn("[CommandControls] Failed to start metrics endpoint on {}:{}",
+                    settings.metricsBindAddress, settings.metricsPort, e);
+            server = null;
+            return;
+        }
+        
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CommandControls Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/metrics", MetricsExporter::handle);
+        server.setExecutor(executor);
+        server.start();
+        boundPort = settings.metricsPort;
+        boundAddress = settings.metricsBindAddress;
+        CommandControl.LOGGER.info("[CommandControls] Serving metrics on http://{}:{}/metrics", boundAddress, boundPort);
+    }
+    
+    /**
+     * Stop the endpoint (called on server stop)
+     */
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+        server = null;
+        executor = null;
+        boundPort = 0;
+        boundAddress = null;
+    }
+    
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+    
+    /**
+     * Render all metrics in the Prometheus text exposition format
+     */
+    public static String render() {
+        StringBuilder out = new StringBuilder(4096);
+        
+        for (PerfMetrics.Timer timer : PerfMetrics.TIMERS) {
+            String name = PREFIX + timer.id + "_seconds";
+            header(out, name, timer.label + " duration", "summary");
+            sample(out, name, "quantile=\"0.5\"", seconds(timer.getPercentileNanos(50)));
+            sample(out, name, "quantile=\"0.99\"", seconds(timer.getPercentileNanos(99)));
+            sample(out, name + "_sum", null, seconds(timer.getTotalNanos()));
+            sample(out, name + "_count", null, timer.getCount());
+            
+            header(out, name + "_max", timer.label + " slowest duration since start or reset", "gauge");
+            sample(out, name + "_max", null, seconds(timer.getMaxNanos()));
+        }
+        
+        for (PerfMetrics.Ratio ratio : PerfMetrics.RATIOS) {
+            String name = PREFIX + ratio.id;
+            header(out, name + "_hits_total", ratio.label + " hits", "counter");
+            sample(out, name + "_hits_total", null, ratio.getHits());
+            header(out, name + "_misses_total", ratio.label + " misses", "counter");
+            sample(out, name + "_misses_total", null, ratio.getMisses());
+            double hitRatio = ratio.getHitRatio();
+            header(out, name + "_hit_ratio", ratio.label + " hit ratio", "gauge");
+            sample(out, name + "_hit_ratio", null, Double.isNaN(hitRatio) ? 0 : hitRatio);
+        }
+        
+        header(out, PREFIX + "sync_bytes_total", PerfMetrics.SYNC_BYTES.label, "counter");
+        sample(out, PREFIX + "sync_bytes_total", null, PerfMetrics.SYNC_BYTES.get());
+        
+        String denials = PREFIX + "denials_total";
+        header(out, denials, PerfMetrics.DENIALS.label + " by root command", "counter");
+        for (Map.Entry<String, Long> entry : PerfMetrics.getDenialsByCommand().entrySet()) {
+            sample(out, denials, "command=\"" + escape(entry.getKey()) + "\"", entry.getValue());
+        }
+        
+        return out.toString();
+    }
+    
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+    
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+    
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+    
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
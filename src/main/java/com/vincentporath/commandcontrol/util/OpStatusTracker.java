@@ -0,0 +1,69 @@
+package com.vincentporath.commandcontrol.util;
+
+import com.vincentporath.commandcontrol.config.CommandControlConfig;
+import com.vincentporath.commandcontrol.network.ResyncScheduler;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which online players are OP (permission level 4).
+ * Updated from the operator list hooks instead of polling, so only players whose
+ * OP status actually changed are re-evaluated and resynced.
+ */
+public class OpStatusTracker {
+    
+    // Online players with full access
+    private static final Set<UUID> operators = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * Record the OP status of a joining player
+     */
+    public static void track(ServerPlayerEntity player) {
+        if (player.hasPermissionLevel(4)) {
+            operators.add(player.getUuid());
+        } else {
+            operators.remove(player.getUuid());
+        }
+    }
+    
+    /**
+     * Forget a player (called on disconnect)
+     */
+    public static void forget(UUID uuid) {
+        operators.remove(uuid);
+    }
+    
+    /**
+     * Check if an online player was OP at the last update
+     */
+    public static boolean isOperator(UUID uuid) {
+        return operators.contains(uuid);
+    }
+    
+    /**
+     * Re-evaluate one player after the operator list changed
+     * Resyncs the player if their OP status is different now
+     * @return true if the status changed
+     */
+    public static boolean refresh(MinecraftServer server, UUID uuid) {
+        ServerPlayerEntity player = server.getPlayerManager().getPlayer(uuid);
+        if (player == null) {
+            return false;
+        }
+        
+        boolean currentlyOp = player.hasPermissionLevel(4);
+        boolean changed = currentlyOp ? operators.add(uuid) : operators.remove(uuid);
+        if (changed) {
+            // OP level is the rank fallback, so the cached rank is stale now
+            CommandControlConfig.invalidatePlayerRank(uuid);
+            
+            // Resend sync and command tree with updated permissions
+            ResyncScheduler.schedule(uuid);
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,271 @@
+package com.vincentporath.commandcontrol.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead timing and cache metrics, shown by /commandcontrols perf.
+ *
+ * Counters are striped LongAdders so concurrent updates from the server thread, tree builders
+ * and network threads don't contend. Latencies go into log-linear histograms (8 buckets per
+ * power of two, at most 12.5% error) so percentiles cost nothing on the recording side.
+ */
+public final class PerfMetrics {
+    
+    public static final Timer PERMISSION_CHECK = new Timer("permission_check", "Permission checks");
+    public static final Timer RANK_RESOLVE = new Timer("rank_resolve", "Rank resolution");
+    public static final Timer CONFIG_RELOAD = new Timer("config_reload", "Config reloads");
+    public static final Timer TREE_BUILD = new Timer("tree_build", "Tree builds");
+    public static final Timer SUGGESTION = new Timer("suggestion", "Suggestions");
+    public static final Timer SYNC_PACKET = new Timer("sync_packet", "Sync packets");
+    
+    public static final Ratio RANK_CACHE = new Ratio("rank_cache", "Rank cache");
+    public static final Ratio TREE_CACHE = new Ratio("tree_cache", "Tree cache");
+    public static final Ratio SUGGESTION_CACHE = new Ratio("suggestion_cache", "Suggestion cache");
+    public static final Ratio PARSE_CACHE = new Ratio("parse_cache", "Parse cache");
+    
+    public static final Counter SYNC_BYTES = new Counter("sync_bytes", "Sync bytes sent");
+    public static final Counter DENIALS = new Counter("denials", "Denied commands");
+    
+    public static final List<Timer> TIMERS = List.of(PERMISSION_CHECK, RANK_RESOLVE, CONFIG_RELOAD, TREE_BUILD, SUGGESTION, SYNC_PACKET);
+    public static final List<Ratio> RATIOS = List.of(RANK_CACHE, TREE_CACHE, SUGGESTION_CACHE, PARSE_CACHE);
+    public static final List<Counter> COUNTERS = List.of(SYNC_BYTES, DENIALS);
+    
+    // Denials per root command; names beyond the limit are counted as "other"
+    private static final int MAX_DENIED_COMMANDS = 256;
+    private static final Map<String, LongAdder> denialsByCommand = new ConcurrentHashMap<>();
+    
+    private static volatile long startNanos = System.nanoTime();
+    
+    private PerfMetrics() {
+    }
+    
+    /**
+     * Current time for a measurement started now, see {@link Timer#recordSince(long)}
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+    
+    /**
+     * Count a denied command
+     */
+    public static void recordDenial(String command) {
+        DENIALS.increment();
+        LongAdder counter = denialsByCommand.get(command);
+        if (counter == null) {
+            String key = denialsByCommand.size() < MAX_DENIED_COMMANDS ? command : "other";
+            counter = denialsByCommand.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+    
+    /**
+     * Snapshot of the denials per root command
+     */
+    public static Map<String, Long> getDenialsByCommand() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        denialsByCommand.forEach((command, counter) -> snapshot.put(command, counter.sum()));
+        return snapshot;
+    }
+    
+    /**
+     * Seconds since the metrics were started or last reset
+     */
+    public static double getElapsedSeconds() {
+        return Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    }
+    
+    /**
+     * Reset every metric (e.g. before measuring a lag spike)
+     */
+    public static void reset() {
+        TIMERS.forEach(Timer::reset);
+        RATIOS.forEach(Ratio::reset);
+        COUNTERS.forEach(Counter::reset);
+        denialsByCommand.clear();
+        startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Monotonic event counter
+     */
+    public static final class Counter {
+        public final String id;
+        public final String label;
+        private final LongAdder value = new LongAdder();
+        
+        Counter(String id, String label) {
+            this.id = id;
+            this.label = label;
+        }
+        
+        public void increment() {
+            value.increment();
+        }
+        
+        public void add(long amount) {
+            value.add(amount);
+        }
+        
+        public long get() {
+            return value.sum();
+        }
+        
+        void reset() {
+            value.reset();
+        }
+    }
+    
+    /**
+     * Hits and misses of a cache
+     */
+    public static final class Ratio {
+        public final String id;
+        public final String label;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        
+        Ratio(String id, String label) {
+            this.id = id;
+            this.label = label;
+        }
+        
+        public void record(boolean hit) {
+            (hit ? hits : misses).increment();
+        }
+        
+        public long getHits() {
+            return hits.sum();
+        }
+        
+        public long getMisses() {
+            return misses.sum();
+        }
+        
+        /**
+         * Hit ratio between 0 and 1, or NaN without any lookups
+         */
+        public double getHitRatio() {
+            long h = getHits();
+            long total = h + getMisses();
+            return total == 0 ? Double.NaN : (double) h / total;
+        }
+        
+        void reset() {
+            hits.reset();
+            misses.reset();
+        }
+    }
+    
+    /**
+     * Latency recorder with count, total, max and a log-linear histogram
+     */
+    public static final class Timer {
+        // 8 sub-buckets per power of two; values up to 2^40 ns (about 18 minutes)
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int MAX_EXPONENT = 40;
+        private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BITS + 1) * SUB_COUNT + SUB_COUNT;
+        
+        public final String id;
+        public final String label;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        
+        Timer(String id, String label) {
+            this.id = id;
+            this.label = label;
+        }
+        
+        /**
+         * Record the time since a {@link PerfMetrics#start()}
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+        
+        public void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            buckets.incrementAndGet(bucketOf(nanos));
+        }
+        
+        private static int bucketOf(long value) {
+            if (value < 2 * SUB_COUNT) {
+                return (int) value;
+            }
+            int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+            int top = (int) Math.min(value >>> (exponent - SUB_BITS), 2 * SUB_COUNT - 1);
+            return (exponent - SUB_BITS) * SUB_COUNT + top;
+        }
+        
+        /**
+         * Highest value that falls into a bucket
+         */
+        private static long bucketLimit(int bucket) {
+            if (bucket < 2 * SUB_COUNT) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+            long top = bucket % SUB_COUNT + SUB_COUNT;
+            return ((top + 1) << (exponent - SUB_BITS)) - 1;
+        }
+        
+        public long getCount() {
+            return count.sum();
+        }
+        
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+        
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+        
+        /**
+         * Approximate percentile in nanoseconds (upper bound of the bucket it falls into)
+         * @param percentile between 0 and 100
+         */
+        public long getPercentileNanos(double percentile) {
+            long[] snapshot = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(bucketLimit(i), getMaxNanos());
+                }
+            }
+            return getMaxNanos();
+        }
+        
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+}